@@ -0,0 +1,75 @@
+/**
+ *  Reading a day's fault log CSV, from UTF-16 bytes already in memory so only parsing is measured.
+ *   - split: InputStreamReader, BufferedReader and String.split per row, as CSVParser read the files before FaultLogTokenizer
+ *   - tokenizer: the same fields read with FaultLogTokenizer
+ *   - faultLogFile: every aggregate CSVParser serves, built in one pass
+ *   Scores are per file, divide the row count by the score for rows/sec.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CsvTokenizingBenchmark {
+
+    @Param({"500", "5000"})
+    public int rows;
+
+    private byte[] file;
+
+    @Setup
+    public void setup() {
+        file = FaultLogData.faultLogFile(rows);
+    }
+
+    @Benchmark
+    public void split(Blackhole bh) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(file), StandardCharsets.UTF_16))) {
+            br.readLine();
+            br.readLine();
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] columns = line.split(";");
+                bh.consume(Integer.parseInt(columns[6].trim()));
+                bh.consume(columns[2].trim());
+                String[] timeParts = columns[5].trim().split(":");
+                bh.consume(Integer.parseInt(timeParts[0]) * 3600L + Integer.parseInt(timeParts[1]) * 60L + Integer.parseInt(timeParts[2]));
+            }
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole bh) throws IOException {
+        FaultLogTokenizer tokenizer = new FaultLogTokenizer(new ByteArrayInputStream(file), ';');
+        tokenizer.nextRow();
+        tokenizer.nextRow();
+        while (tokenizer.nextRow()) {
+            bh.consume(tokenizer.intField(6));
+            bh.consume(tokenizer.trimmedField(2));
+            bh.consume(tokenizer.secondsField(5));
+        }
+    }
+
+    @Benchmark
+    public FaultLogFile faultLogFile() throws IOException {
+        return new FaultLogFile(new ByteArrayInputStream(file), ';');
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ *  Generated fault data for the benchmarks.
+ *   Sizes follow the floor: around 30 machines and a few thousand faults on a busy day,
+ *   with fault names and times spread the way the real logs are, and a fixed seed so every run sees the same data.
+ */
+
+package com.example.machinelogapi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+final class FaultLogData {
+
+    static final int MACHINES = 30;
+
+    private static final String[] FAULTS = {"Standing", "Broken Needle", "Yarn Break", "Oil Leak", "Tension Fault", "False Stop", "Lycra Break"};
+    private static final String[] OPERATORS = {"J Smith", "A Patel", "M Nowak", "S Jones", "K Brown"};
+
+    private FaultLogData() {}
+
+    static String[] faultLines(int count) {
+        /**
+         * This method returns fault lines as the machines send them to InputKnittingFaultLog
+         *
+         *  Example: "25/08/2021 06:31:12;4;Standing;12;J Smith;00:03:20;3"
+         */
+        Random random = new Random(42);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = faultLine(random);
+        }
+        return lines;
+    }
+
+    static String machineSeed() {
+        // Every machine the generated faults are on, as storage.memory.machines lists them
+        StringBuilder seed = new StringBuilder();
+        for (int machine = 1; machine <= MACHINES; machine++) {
+            seed.append(machine == 1 ? "" : ",").append(machine).append(":knitting:Long Eaton");
+        }
+        return seed.toString();
+    }
+
+    static String[] faultTimes(int count) {
+        // Fault times as Postgres prints an interval, "hh:mm:ss"
+        Random random = new Random(42);
+        String[] times = new String[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = faultTime(random);
+        }
+        return times;
+    }
+
+    static byte[] faultLogFile(int rows) {
+        /**
+         * This method returns a day's "All Machines Knitting MCs Fault Log.csv", UTF-16 with a BOM as the machines write it
+         */
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(rows * 64);
+        sb.append("sep=;\r\n");
+        sb.append("Date;Fault Code;Fault;Operator Code;Operator;Fault Time;Machine\r\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(faultLine(random)).append("\r\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_16);
+    }
+
+    private static String faultLine(Random random) {
+        int fault = random.nextInt(FAULTS.length);
+        int operator = random.nextInt(OPERATORS.length);
+        return String.format("%02d/10/2026 %02d:%02d:%02d;%d;%s;%d;%s;%s;%d",
+                1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                fault, FAULTS[fault], operator, OPERATORS[operator], faultTime(random), 1 + random.nextInt(MACHINES));
+    }
+
+    private static String faultTime(Random random) {
+        // Mostly short stops, with the occasional long one
+        int seconds = random.nextInt(10) == 0 ? random.nextInt(4 * 3600) : random.nextInt(600);
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *  Parsing of single values on the request paths.
+ *   - knittingFaultParse: a line from InputKnittingFaultLog into a KnittingFault
+ *   - faultTimeSplit: an interval string as getOverviewData and getFaultReport parsed fault_time, split on ':'
+ *   - roundBigDecimal: roundToOneDecimalPlace, a BigDecimal per value, as the fault reports round hours and percentages
+ *   - roundMath: the same rounding without BigDecimal, for comparison
+ */
+
+package com.example.machinelogapi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FaultParsingBenchmark {
+
+    private static final int COUNT = 4096;
+
+    private String[] lines;
+    private String[] faultTimes;
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        lines = FaultLogData.faultLines(COUNT);
+        faultTimes = FaultLogData.faultTimes(COUNT);
+        values = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = (i * 7919 % 14400) / 60 / 60.0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void knittingFaultParse(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(KnittingFault.parse(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void faultTimeSplit(Blackhole bh) {
+        for (String faultTimeString : faultTimes) {
+            String[] parts = faultTimeString.split(":");
+            long hours = Integer.parseInt(parts[0]);
+            long minutes = Integer.parseInt(parts[1]);
+            long seconds = Integer.parseInt(parts[2]);
+            bh.consume(hours + (double) minutes / 60 + (double) seconds / 3600);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void roundBigDecimal(Blackhole bh) {
+        for (double value : values) {
+            bh.consume(FaultLogFile.roundToOneDecimalPlace(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void roundMath(Blackhole bh) {
+        for (double value : values) {
+            bh.consume(Math.round(value * 10) / 10.0);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ *  The shift reads and fault inserts against InMemoryFaultStore, with a month of generated faults already stored.
+ *   No database is involved, so these give the cost of the API's own work on a request, the floor under what SQLManager can do.
+ *   - overview: cached per shift, as it is for every dashboard poll after the first
+ *   - machineCard, faultLog, faultReport, dashboard: one shift of one machine, or the whole floor for the dashboard
+ *   - insertAndRemove: a batch of 100 faults as the ingestion queue writes them, then each removed again so the store doesn't grow
+ */
+
+package com.example.machinelogapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FaultStoreBenchmark {
+
+    private static final String DATE = "2026-10-03";
+    private static final String SHIFT = "day";
+    private static final String MACHINE = "3";
+    private static final int BATCH = 100;
+
+    @Param({"20000", "200000"})
+    public int faults;
+
+    private InMemoryFaultStore store;
+    private List<KnittingFault> batch;
+    private int nextId;
+
+    @Setup
+    public void setup() {
+        ShiftCalendar calendar = new ShiftCalendar("06:00,17:30", "06:00,17:30", "SATURDAY,SUNDAY", "06:00,17:30", "", 10);
+        MachineRegistry registry = new MachineRegistry(Optional.empty(), FaultLogData.machineSeed());
+        ShiftAggregateCache shiftCache = new ShiftAggregateCache(calendar, registry, 512);
+        FaultDictionary dictionary = new FaultDictionary(Optional.empty(), 10000,
+                "0:Standing,1:Broken Needle,2:Yarn Break,3:Oil Leak,4:Tension Fault,5:False Stop,6:Lycra Break",
+                "0:J Smith,1:A Patel,2:M Nowak,3:S Jones,4:K Brown");
+        dictionary.load();
+        store = new InMemoryFaultStore(shiftCache, calendar, registry, dictionary, new LiveShiftFeed(shiftCache, calendar, dictionary, 256, 1800000, 15000));
+
+        List<KnittingFault> stored = new ArrayList<>(faults);
+        for (String line : FaultLogData.faultLines(faults)) {
+            stored.add(KnittingFault.parse(line));
+        }
+        store.insertKnittingFaults(stored);
+
+        batch = new ArrayList<>(BATCH);
+        for (String line : FaultLogData.faultLines(BATCH)) {
+            batch.add(KnittingFault.parse(line));
+        }
+
+        nextId = faults + 1; // Ids are handed out in order
+        store.getOverviewData(DATE, SHIFT); // Cache the shift
+    }
+
+    @Benchmark
+    public OverviewResponse overview() {
+        return store.getOverviewData(DATE, SHIFT);
+    }
+
+    @Benchmark
+    public MachineCardResponse machineCard() {
+        return store.getMachineCardData(MACHINE, DATE, SHIFT);
+    }
+
+    @Benchmark
+    public FaultLogResponse faultLog() {
+        return store.getFaultLog(MACHINE, DATE, SHIFT, null, 500);
+    }
+
+    @Benchmark
+    public FaultReportResponse faultReport() {
+        return store.getFaultReport(MACHINE, DATE, SHIFT);
+    }
+
+    @Benchmark
+    public Map<String, Object> dashboard() {
+        return store.getDashboardData(DATE, SHIFT);
+    }
+
+    @Benchmark
+    public void insertAndRemove() {
+        store.insertKnittingFaults(batch);
+        for (int i = 0; i < BATCH; i++) {
+            store.removeFault(nextId++);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *  Building the CSVParser responses from a day's fault log that is already parsed and cached.
+ *   The file server is replaced with the generated file in memory, so each call measures only the cache check
+ *   and the assembly of the response, which is what every dashboard request pays once the file is cached.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jcifs.CIFSException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseBuildingBenchmark {
+
+    private static final String DATE = "17.10.2026";
+    private static final String MACHINE = "3";
+
+    private static final class InMemorySmb extends SmbAccess {
+        private final byte[] file;
+
+        InMemorySmb(byte[] file) throws CIFSException {
+            super(new SimpleMeterRegistry(), 5000, 10000, 60000, 300000, 262144);
+            this.file = file;
+        }
+
+        @Override
+        public FileInfo stat(String url) {
+            return new FileInfo(1L, file.length);
+        }
+
+        @Override
+        public <T> T read(String url, long offset, ContentReader<T> reader) throws IOException {
+            return reader.read(new ByteArrayInputStream(file));
+        }
+    }
+
+    @Param({"500", "5000"})
+    public int rows;
+
+    private CSVParser csvParser;
+
+    @Setup
+    public void setup() throws CIFSException {
+        csvParser = new CSVParser(new InMemorySmb(FaultLogData.faultLogFile(rows)), 31);
+        csvParser.getOverviewData(DATE); // Parse and cache the file
+    }
+
+    @Benchmark
+    public OverviewResponse overview() {
+        return csvParser.getOverviewData(DATE);
+    }
+
+    @Benchmark
+    public MachineCardResponse machineCard() {
+        return csvParser.getMachineCardData(MACHINE, DATE);
+    }
+
+    @Benchmark
+    public Map<String, Object> faultLog() {
+        return csvParser.getFaultLog(MACHINE, DATE);
+    }
+
+    @Benchmark
+    public FaultReportResponse faultReport() {
+        return csvParser.getFaultReport(MACHINE, DATE);
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *  Finding shifts with ShiftCalendar, with the default patterns and a month of generated fault times.
+ *   - shiftOf: the shift of each of 1000 faults, as ingestion and the rollup find it
+ *   - stringBounds: a shift's start and end built from date strings, as SQLManager did before ShiftCalendar
+ *   - calendarBounds: the same start and end from the precomputed boundaries
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShiftCalendarBenchmark {
+
+    private static final String DATE = "2026-10-03";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private ShiftCalendar calendar;
+    private LocalDateTime[] faultTimes;
+
+    @Setup
+    public void setup() {
+        calendar = new ShiftCalendar("06:00,17:30", "06:00,17:30", "SATURDAY,SUNDAY", "06:00,17:30", "", 10);
+
+        Random random = new Random(42);
+        LocalDateTime start = LocalDate.parse("2026-10-01").atStartOfDay();
+        faultTimes = new LocalDateTime[1000];
+        for (int i = 0; i < faultTimes.length; i++) {
+            faultTimes[i] = start.plusSeconds(random.nextInt(31 * 24 * 3600));
+        }
+    }
+
+    @Benchmark
+    public void shiftOf(Blackhole bh) {
+        for (LocalDateTime faultTime : faultTimes) {
+            bh.consume(calendar.shiftOf(faultTime));
+        }
+    }
+
+    @Benchmark
+    public Timestamp[] stringBounds() {
+        return new Timestamp[] {Timestamp.valueOf(DATE + " 17:30:00"),
+                Timestamp.valueOf(LocalDateTime.parse(DATE + " 06:00:00", FORMATTER).plusDays(1).format(FORMATTER))};
+    }
+
+    @Benchmark
+    public Timestamp[] calendarBounds() {
+        return calendar.bounds(LocalDate.parse(DATE), "night");
+    }
+}
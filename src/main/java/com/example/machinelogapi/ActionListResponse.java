@@ -0,0 +1,28 @@
+/**
+ *  A page of the corrective actions that have not been completed yet, oldest first.
+ *   "nextCursor" is set when there are more actions after this page, see PageCursor.
+ *   Rows keep the column names of corrective_actions as their keys, as they have always been sent.
+ */
+
+package com.example.machinelogapi;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ActionListResponse(List<Action> actionList, String nextCursor, String error) {
+
+    public record Action(int id,
+                         String date,
+                         @JsonProperty("machine_number") int machineNumber,
+                         @JsonProperty("isdayshift") boolean isDayShift,
+                         @JsonProperty("fault_code") int faultCode,
+                         String observation,
+                         String action) {}
+
+    public static ActionListResponse ofError(String error) {
+        return new ActionListResponse(null, null, error);
+    }
+}
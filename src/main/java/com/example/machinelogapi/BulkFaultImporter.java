@@ -0,0 +1,157 @@
+/**
+ *  This class imports many knitting faults from one request body.
+ *   The body is read line by line as it arrives, every line in the same format as InputKnittingFaultLog,
+ *   and the parsed faults are inserted in batched transactions.
+ *   Every line gets its own accepted/rejected result so the gateway knows which lines to resend.
+ *   When the database refuses a batch, its lines are retried one at a time to find the ones it refuses.
+ *   When the database can't be written at all, the import stops there, and the lines after the last written batch are left for the gateway to resend.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BulkFaultImporter {
+    private final FaultStore faultStore;
+    private final int batchSize;
+
+    BulkFaultImporter(FaultStore faultStore, @Value("${ingest.bulk.batchSize:500}") int batchSize) {
+        this.faultStore = faultStore;
+        this.batchSize = batchSize;
+    }
+
+    public Map<String, Object> importKnittingFaults(InputStream body) throws IOException {
+        /**
+         * This method imports every fault line in a request body
+         *
+         * @param body: Fault lines separated by new lines, blank lines are ignored
+         *            Example: "25/08/2021 06:31:12;4;Standing;12;J Smith;00:03:20;3\n25/08/2021 06:40:02;7;False Stop;12;J Smith;00:00:41;3"
+         *
+         * @return A map containing the following keys:
+         *         - "accepted": The number of lines written to the database
+         *         - "rejected": The number of lines that were not
+         *         - "results": A list with one entry per line, in the order they were sent, up to where the import stopped
+         *         Example: [ { "line": 1, "status": "accepted" }, { "line": 2, "status": "rejected", "error": "..." } ]
+         *         - "error": An error message if the database failed and the import stopped early
+         */
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<KnittingFault> batch = new ArrayList<>(batchSize);
+        List<Map<String, Object>> batchResults = new ArrayList<>(batchSize);
+        String error = null;
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("line", lineNumber);
+                results.add(result);
+
+                try {
+                    batch.add(KnittingFault.parse(line));
+                    batchResults.add(result);
+                } catch (IllegalArgumentException e) {
+                    reject(result, e);
+                    continue;
+                }
+
+                if (batch.size() >= batchSize) {
+                    error = insertBatch(batch, batchResults);
+                    if (error != null) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (error == null) {
+            error = insertBatch(batch, batchResults);
+        }
+
+        long accepted = results.stream().filter(result -> "accepted".equals(result.get("status"))).count();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("accepted", accepted);
+        response.put("rejected", results.size() - accepted);
+        response.put("results", results);
+        if (error != null) {
+            response.put("error", error);
+        }
+        return response;
+    }
+
+    private String insertBatch(List<KnittingFault> batch, List<Map<String, Object>> batchResults) {
+        // Returns an error message if the import has to stop, null otherwise
+        if (batch.isEmpty()) {
+            return null;
+        }
+
+        String error = null;
+        try {
+            faultStore.insertKnittingFaults(batch);
+            for (Map<String, Object> result : batchResults) {
+                result.put("status", "accepted");
+            }
+        } catch (RuntimeException batchFailure) {
+            if (SqlFailures.isDataError(batchFailure)) {
+                // The whole transaction rolled back, retry line by line to find out which ones the database refuses
+                error = insertOneByOne(batch, batchResults);
+            } else {
+                // Not something the lines did, retrying them one by one would only fail again for each of them
+                batchFailure.printStackTrace();
+                error = failRemaining(batchResults, 0, batchFailure);
+            }
+        }
+
+        batch.clear();
+        batchResults.clear();
+        return error;
+    }
+
+    private String insertOneByOne(List<KnittingFault> batch, List<Map<String, Object>> batchResults) {
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                faultStore.insertKnittingFaults(List.of(batch.get(i)));
+                batchResults.get(i).put("status", "accepted");
+            } catch (RuntimeException e) {
+                if (!SqlFailures.isDataError(e)) {
+                    e.printStackTrace();
+                    return failRemaining(batchResults, i, e);
+                }
+                reject(batchResults.get(i), e);
+            }
+        }
+        return null;
+    }
+
+    private static String failRemaining(List<Map<String, Object>> batchResults, int from, RuntimeException e) {
+        for (Map<String, Object> result : batchResults.subList(from, batchResults.size())) {
+            reject(result, e);
+        }
+        return SqlFailures.isTransient(e) ? "Failed to connect to the database" : "Failed to write to the database";
+    }
+
+    private static void reject(Map<String, Object> result, Exception e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        result.put("status", "rejected");
+        result.put("error", cause.getMessage());
+    }
+}
@@ -1,198 +1,108 @@
 package com.example.machinelogapi;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.time.Duration;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-
-import jcifs.CIFSContext;
-import jcifs.smb.NtlmPasswordAuthentication;
-import jcifs.smb.NtlmPasswordAuthenticator;
-import jcifs.smb.SmbFile;
-import jcifs.smb.SmbFileInputStream;
-
-import jcifs.context.BaseContext;
-import jcifs.context.SingletonContext;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 
 @Component
 public class CSVParser {
 
-    String delimiter = ";";
-    String line = "";
+    private record CachedFile(FaultLogFile file, long lastModified, long size) {}
+
+    char delimiter = ';';
 
     String smbUrl = "smb://10.10.2.5/Long Eaton/STILLAGE REPORTS/";
     // Long Eaton/STILLAGE REPORTS/%runningtime10112023
-    String smbUsername;
-    String smbPassword;
-    String psqlUsername;
-    String psqlPassword;
-
-    Properties props = new Properties();
-
-    public CSVParser() {
-        try {
-            props.load(new FileInputStream("config.properties"));
-            smbUsername = props.getProperty("smb.username");
-            smbPassword = props.getProperty("smb.password");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
 
+    private final SmbAccess smb;
 
+    // Parsed files by path, most recently used last
+    private final Map<String, CachedFile> fileCache;
 
+    public CSVParser(SmbAccess smb, @Value("${csv.cache.maxFiles:31}") int maxFiles) {
+        this.smb = smb;
+        fileCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedFile> eldest) {
+                return size() > maxFiles;
+            }
+        };
+    }
 
-    public Map<String, Object> getOverviewData(String date) {
-        Map<String, Object> response = new HashMap<>();
-        Map<Integer, Duration> machineFaultTimes = new HashMap<>();
 
-        String fulldate = formatDateDDMMYYYY(date);
-        String csvFile = smbUrl + "%runningtime" + fulldate + "/" + date + " All Machines Knitting MCs Fault Log.csv";
-        //String csvFile = "smb://10.10.2.5/Long Eaton/STILLAGE REPORTS/%running time12072024/test.2.test.csv";
 
-        CIFSContext baseContext = SingletonContext.getInstance();
-        NtlmPasswordAuthenticator auth = new NtlmPasswordAuthenticator("", smbUsername, smbPassword);
-        CIFSContext authContext = baseContext.withCredentials(auth);
 
+    public OverviewResponse getOverviewData(String date) {
         try {
-            SmbFile smbFile = new SmbFile(csvFile, authContext);
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new SmbFileInputStream(smbFile), StandardCharsets.UTF_16))) {
-                br.readLine(); // Skip header lines
-                br.readLine();
-                while ((line = br.readLine()) != null) {
-                    String[] columns = line.split(delimiter);
-
-                    int machineNo = Integer.parseInt(columns[6].trim());
-                    String faultTimeStr = columns[5].trim();
-                    Duration faultDuration = parseFaultTime(faultTimeStr);
-
-                    machineFaultTimes.put(machineNo, machineFaultTimes.getOrDefault(machineNo, Duration.ZERO).plus(faultDuration));
-                }
-
-                List<Integer> machineNumbers = new ArrayList<>();
-                List<Double> percentRun = new ArrayList<>();
-
-                for (Map.Entry<Integer, Duration> entry : machineFaultTimes.entrySet()) {
-                    int machineNo = entry.getKey();
-                    Duration faultTime = entry.getValue();
-                    Duration totalTime = Duration.ofHours(24);
-                    Duration runningTime = totalTime.minus(faultTime);
-                    double runningTimePercentage = (double) runningTime.toMinutes() / totalTime.toMinutes() * 100;
-
-                    machineNumbers.add(machineNo);
-                    percentRun.add(runningTimePercentage);
-                }
-
-                Map<String, Object> machines = new HashMap<>();
-                machines.put("numbers", machineNumbers);
-                machines.put("percentRun", percentRun);
-
-                // Add machines data to the response
-                response.put("machines", machines);
+            FaultLogFile faultLogFile = readFaultLog(date);
+
+            Map<Integer, FaultLogFile.MachineFaults> machineFaults = new HashMap<>(faultLogFile.getMachines());
+            int[] machineNumbers = new int[machineFaults.size()];
+            double[] percentRun = new double[machineFaults.size()];
+            int index = 0;
+            for (Map.Entry<Integer, FaultLogFile.MachineFaults> entry : machineFaults.entrySet()) {
+                int machineNo = entry.getKey();
+                Duration faultTime = Duration.ofSeconds(entry.getValue().totalFaultSeconds);
+                Duration totalTime = Duration.ofHours(24);
+                Duration runningTime = totalTime.minus(faultTime);
+                double runningTimePercentage = (double) runningTime.toMinutes() / totalTime.toMinutes() * 100;
+
+                machineNumbers[index] = machineNo;
+                percentRun[index] = runningTimePercentage;
+                index++;
             }
+
+            return new OverviewResponse(new OverviewResponse.Machines(machineNumbers, percentRun), null);
         } catch (IOException e) {
             e.printStackTrace();
-            // Return a consistent structure with error message
-            response.put("error", "Error reading CSV file: " + e.getMessage());
-            response.put("machines", new HashMap<>()); // Provide empty machines structure
+            // Return a consistent structure with error message, empty machines serialize as {}
+            return new OverviewResponse(new OverviewResponse.Machines(null, null), "Error reading CSV file: " + e.getMessage());
         }
-
-        return response;
     }
 
-    public Map<String, Object> getMachineCardData(String machineNumber, String date) {
-        Map<String, Object> response = new HashMap<>();
-        Map<String, Double> faultDownTime = new HashMap<>();
-
-        String fulldate = formatDateDDMMYYYY(date);
-        String csvFile = smbUrl + "%runningtime" + fulldate + "/" + date + " All Machines Knitting MCs Fault Log.csv";
-        //String csvFile = "smb://10.10.2.5/Long Eaton/STILLAGE REPORTS/%running time12072024/test.2.test.csv";
-
-        CIFSContext baseContext = SingletonContext.getInstance();
-        NtlmPasswordAuthenticator auth = new NtlmPasswordAuthenticator("", smbUsername, smbPassword);
-        CIFSContext authContext = baseContext.withCredentials(auth);
-
-
-
+    public MachineCardResponse getMachineCardData(String machineNumber, String date) {
         try {
-            SmbFile smbFile = new SmbFile(csvFile, authContext);
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new SmbFileInputStream(smbFile), StandardCharsets.UTF_16))) {
-                br.readLine(); // Skip header lines
-                br.readLine();
-                while ((line = br.readLine()) != null) {
-                    String[] columns = line.split(delimiter);
-
-                    int machineNo = Integer.parseInt(columns[6].trim());
-                    if (!String.valueOf(machineNo).equals(machineNumber)) {
-                        continue; // Skip records that don't match the given machine number
-                    }
-
-                    String fault = columns[2].trim(); // Assuming fault is in column 3 (index 2)
-                    String faultTimeStr = columns[5].trim();
-                    Duration faultDuration = parseFaultTime(faultTimeStr);
-
-                    double faultHours = faultDuration.toMinutes() / 60.0;
-                    faultDownTime.put(fault, faultDownTime.getOrDefault(fault, 0.0) + faultHours);
-                }
-
-                double totalDownTime = 0.0;
-                for (Map.Entry<String, Double> entry : faultDownTime.entrySet()) {
-                    double downTime = entry.getValue();
-                    totalDownTime += downTime;
-                }
-
-                response.put("machineNumber", machineNumber);
-                response.put("downTime", faultDownTime);
-                response.put("totalDownTime", totalDownTime);
+            FaultLogFile.MachineFaults machine = readFaultLog(date).getMachine(machineNumber);
+            Map<String, Double> faultDownTime = new HashMap<>(machine.faultHours);
 
+            double totalDownTime = 0.0;
+            for (Map.Entry<String, Double> entry : faultDownTime.entrySet()) {
+                double downTime = entry.getValue();
+                totalDownTime += downTime;
             }
+
+            return new MachineCardResponse(machineNumber, faultDownTime, totalDownTime, null, null);
         } catch (IOException e) {
-            // Return a consistent structure with error message
-            response.put("error", "Error reading CSV file: " + e.getMessage());
-            response.put("downTime", new HashMap<>()); // Provide empty downTime structure
-            response.put("totalDownTime", 0.0); // Provide default value
+            // Return a consistent structure with error message, empty downTime and no down time
+            return new MachineCardResponse(null, Map.of(), 0.0, null, "Error reading CSV file: " + e.getMessage());
         }
-
-        return response;
     }
 
     public Map<String, Object> getFaultLog(String machineNo, String date) {
         Map<String, Object> response = new HashMap<>();
 
-        String fulldate = formatDateDDMMYYYY(date);
-        String csvFile = smbUrl + "%runningtime" + fulldate + "/" + date + " All Machines Knitting MCs Fault Log.csv";
-
-        CIFSContext baseContext = SingletonContext.getInstance();
-        NtlmPasswordAuthenticator auth = new NtlmPasswordAuthenticator("", smbUsername, smbPassword);
-        CIFSContext authContext = baseContext.withCredentials(auth);
-
         try {
-            SmbFile smbFile = new SmbFile(csvFile, authContext);
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new SmbFileInputStream(smbFile), StandardCharsets.UTF_16))) {
-                br.readLine(); // Skip line denoting delimiter
-                String[] header = br.readLine().split(delimiter);
-                List<Map<String, String>> faultLog = new ArrayList<>();
-
-                while ((line = br.readLine()) != null) {
-                    String[] columns = line.split(delimiter);
-                    if (!columns[6].trim().equals(machineNo)) {
-                        continue; // Skip records that don't match the given machine number
-                    }
-                    Map<String, String> fault = new HashMap<>();
-                    for (int i = 0; i < columns.length; i++) {
-                        fault.put(header[i], columns[i]);
-                    }
-                    faultLog.add(fault);
+            FaultLogFile faultLogFile = readFaultLog(date);
+            String[] header = faultLogFile.getHeader();
+            List<String> rows = faultLogFile.getMachine(machineNo).rows;
+            List<Map<String, String>> faultLog = new ArrayList<>(rows.size());
+
+            // Rows are keyed by the file's own header, so they stay maps, sized for the columns up front
+            for (String row : rows) {
+                String[] columns = row.split(String.valueOf(delimiter));
+                Map<String, String> fault = HashMap.newHashMap(columns.length);
+                for (int i = 0; i < columns.length; i++) {
+                    fault.put(header[i], columns[i]);
                 }
-
-                response.put("header", header);
-                response.put("faultLog", faultLog);
+                faultLog.add(fault);
             }
+
+            response.put("header", header);
+            response.put("faultLog", faultLog);
         } catch (IOException e) {
             // Return a consistent structure with error message
             response.put("error", "Error reading CSV file: " + e.getMessage());
@@ -203,105 +113,78 @@ public class CSVParser {
     }
 
 
-    public Map<String, Object> getFaultReport(String machineNumber, String date) {
-        Map<String, Object> response = new HashMap<>();
-        Map<String, Double> faultDownTime = new HashMap<>();
+    public FaultReportResponse getFaultReport(String machineNumber, String date) {
         Map<String, Double> faultTimePercentage = new HashMap<>();
         Map<String, Double> faultCount = new HashMap<>();
         Map<String, Double> faultCountPercentage = new HashMap<>();
-        int totalFaults = 0;
-
-        String fulldate = formatDateDDMMYYYY(date);
-        String csvFile = smbUrl + "%runningtime" + fulldate + "/" + date + " All Machines Knitting MCs Fault Log.csv";
-
-        CIFSContext baseContext = SingletonContext.getInstance();
-        NtlmPasswordAuthenticator auth = new NtlmPasswordAuthenticator("", smbUsername, smbPassword);
-        CIFSContext authContext = baseContext.withCredentials(auth);
 
         try {
-            SmbFile smbFile = new SmbFile(csvFile, authContext);
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new SmbFileInputStream(smbFile), StandardCharsets.UTF_16))) {
-                br.readLine(); // Skip header lines
-                br.readLine();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] columns = line.split(delimiter);
-                    int machineNo = Integer.parseInt(columns[6].trim());
-                    if (!String.valueOf(machineNo).equals(machineNumber)) {
-                        continue; // Skip records that don't match the given machine number
-                    }
-
-                    String fault = columns[2].trim(); // Assuming fault is in column 3 (index 2)
-                    String faultTimeStr = columns[5].trim();
-                    Duration faultDuration = parseFaultTime(faultTimeStr);
-
-                    double faultHours = faultDuration.toMinutes() / 60.0;
-                    faultHours = roundToOneDecimalPlace(faultHours);
-
-                    faultDownTime.put(fault, faultDownTime.getOrDefault(fault, 0.0) + faultHours);
-                    faultCount.put(fault, faultCount.getOrDefault(fault, 0.0) + 1);
-                    totalFaults++;
-                }
-
-                double totalDownTime = faultDownTime.values().stream().mapToDouble(Double::doubleValue).sum();
+            FaultLogFile.MachineFaults machine = readFaultLog(date).getMachine(machineNumber);
+            Map<String, Double> faultDownTime = new HashMap<>(machine.roundedFaultHours);
+            machine.faultCount.forEach((fault, count) -> faultCount.put(fault, (double) count));
+            int totalFaults = machine.totalFaults;
+
+            double totalDownTime = faultDownTime.values().stream().mapToDouble(Double::doubleValue).sum();
+
+            for (Map.Entry<String, Double> entry : faultDownTime.entrySet()) {
+                String fault = entry.getKey();
+                double downTime = entry.getValue();
+                double downTimePercentage = downTime / totalDownTime * 100;
+                downTimePercentage = FaultLogFile.roundToOneDecimalPlace(downTimePercentage);
+                faultTimePercentage.put(fault, downTimePercentage);
+
+                double count = faultCount.get(fault);
+                double countPercentage = count / totalFaults * 100;
+                countPercentage = FaultLogFile.roundToOneDecimalPlace(countPercentage);
+                faultCountPercentage.put(fault, countPercentage);
+            }
 
-                for (Map.Entry<String, Double> entry : faultDownTime.entrySet()) {
-                    String fault = entry.getKey();
-                    double downTime = entry.getValue();
-                    double downTimePercentage = downTime / totalDownTime * 100;
-                    downTimePercentage = roundToOneDecimalPlace(downTimePercentage);
-                    faultTimePercentage.put(fault, downTimePercentage);
+            List<FaultReportResponse.Row> faultReport = new ArrayList<>(faultDownTime.size());
+            for (String fault : faultDownTime.keySet()) {
+                faultReport.add(new FaultReportResponse.Row(fault, faultCount.get(fault).intValue(), faultCountPercentage.get(fault),
+                        faultDownTime.get(fault), faultTimePercentage.get(fault)));
+            }
 
-                    double count = faultCount.get(fault);
-                    double countPercentage = count / totalFaults * 100;
-                    countPercentage = roundToOneDecimalPlace(countPercentage);
-                    faultCountPercentage.put(fault, countPercentage);
-                }
+            return new FaultReportResponse(machineNumber, totalDownTime, faultReport, null);
+        } catch (IOException e) {
+            return new FaultReportResponse(null, 0.0, List.of(), "Error reading CSV file: " + e.getMessage());
+        }
+    }
 
-                List<Map<String, Object>> faultReport = new ArrayList<>();
-                for (String fault : faultDownTime.keySet()) {
-                    Map<String, Object> faultRow = new LinkedHashMap<>();
-                    faultRow.put("Fault", fault);
-                    faultRow.put("Number of Faults", faultCount.get(fault));
-                    faultRow.put("percentage / count", faultCountPercentage.get(fault));
-                    faultRow.put("Fault Down Time", faultDownTime.get(fault));
-                    faultRow.put("percentage / time", faultTimePercentage.get(fault));
-                    faultReport.add(faultRow);
-                }
+    private FaultLogFile readFaultLog(String date) throws IOException {
+        /**
+         * This method returns the parsed fault log for a day, reading it from the share only when it has changed
+         *
+         * @param date: The date in the format "d.M.yyyy", as the files on the share are named
+         */
+        String fulldate = formatDateDDMMYYYY(date);
+        String csvFile = smbUrl + "%runningtime" + fulldate + "/" + date + FaultLogFile.FILE_SUFFIX;
+        //String csvFile = "smb://10.10.2.5/Long Eaton/STILLAGE REPORTS/%running time12072024/test.2.test.csv";
 
-                response.put("machineNumber", machineNumber);
-                response.put("totalDownTime", totalDownTime);
-                response.put("faultReport", faultReport);
+        // Only the file's attributes are fetched here, the contents are read again only when these change
+        SmbAccess.FileInfo info = smb.stat(csvFile);
 
+        synchronized (fileCache) {
+            CachedFile cached = fileCache.get(csvFile);
+            if (cached != null && cached.lastModified() == info.lastModified() && cached.size() == info.size()) {
+                return cached.file();
             }
-        } catch (IOException e) {
-            response.put("error", "Error reading CSV file: " + e.getMessage());
-            response.put("downTime", new HashMap<>());
-            response.put("totalDownTime", 0.0);
         }
 
-        return response;
-    }
-
+        FaultLogFile faultLogFile = smb.read(csvFile, in -> new FaultLogFile(in, delimiter));
 
-    // Helper method to round a double to 1 decimal place
-    private double roundToOneDecimalPlace(double value) {
-        BigDecimal bd = BigDecimal.valueOf(value);
-        bd = bd.setScale(1, RoundingMode.HALF_UP);
-        return bd.doubleValue();
+        synchronized (fileCache) {
+            fileCache.put(csvFile, new CachedFile(faultLogFile, info.lastModified(), info.size()));
+        }
+        return faultLogFile;
     }
 
 
-    public int[] getMachineNumbers() {
-        return new int[] {1, 2, 3, 17, 19, 26, 27, 28};
-    }
-
-    private static Duration parseFaultTime(String faultTimeStr) {
-        String[] timeParts = faultTimeStr.split(":");
-        int hours = Integer.parseInt(timeParts[0]);
-        int minutes = Integer.parseInt(timeParts[1]);
-        int seconds = Integer.parseInt(timeParts[2]);
-        return Duration.ofHours(hours).plusMinutes(minutes).plusSeconds(seconds);
+    void putFaultLog(String csvFile, FaultLogFile faultLogFile, long lastModified, long size) {
+        // Used by FaultLogTail, so the live day's file is served from what it has already read
+        synchronized (fileCache) {
+            fileCache.put(csvFile, new CachedFile(faultLogFile, lastModified, size));
+        }
     }
 
     private static String formatDateDDMMYYYY(String date) {
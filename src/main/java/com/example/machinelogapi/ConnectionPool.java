@@ -0,0 +1,131 @@
+/**
+ *  This class holds the pool of connections to the PostgreSQL database.
+ *   SQLManager borrows a connection from here for each query instead of opening a new one with DriverManager,
+ *   so the TCP and authentication handshake is only paid when the pool grows.
+ *   Username and password are loaded from the same properties file as before, pool sizing comes from application.properties.
+ *   Not created when storage.engine is "memory", nothing then connects to the database.
+ *   The pool publishes its metrics, including how long each connection took to acquire, as hikaricp.*.
+ *   The schema is migrated, see SchemaMigrations, before the pool is handed to anything else.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "jdbc", matchIfMissing = true)
+public class ConnectionPool {
+    String dbURL = "jdbc:postgresql://10.0.0.85:5432/fault_log";
+
+    private final HikariDataSource dataSource;
+    private final int maxSize;
+
+    ConnectionPool(MeterRegistry meterRegistry,
+                   @Value("${psql.pool.maxSize:10}") int maxSize,
+                   @Value("${psql.pool.minIdle:10}") int minIdle,
+                   @Value("${psql.pool.connectionTimeoutMs:5000}") long connectionTimeoutMs,
+                   @Value("${psql.pool.validationTimeoutMs:2000}") long validationTimeoutMs,
+                   @Value("${psql.pool.keepaliveMs:120000}") long keepaliveMs,
+                   @Value("${psql.pool.leakDetectionMs:20000}") long leakDetectionMs,
+                   @Value("${psql.pool.prepareThreshold:1}") int prepareThreshold,
+                   @Value("${psql.pool.statementCacheQueries:256}") int statementCacheQueries,
+                   @Value("${schema.migrate:true}") boolean migrate) {
+
+        HikariConfig config = new HikariConfig();
+
+        try {
+            // Load username and password from properties file
+            Properties props = new Properties();
+            props.load(new FileInputStream("config.properties"));
+            config.setUsername(props.getProperty("psql.username"));
+            config.setPassword(props.getProperty("psql.password"));
+            dbURL = props.getProperty("psql.url", dbURL);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.maxSize = maxSize;
+
+        config.setPoolName("fault-log");
+        config.setJdbcUrl(dbURL);
+        config.setDriverClassName("org.postgresql.Driver");
+
+        // Keep the pool full from startup so the first dashboard polls do not pay for the handshake
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(Math.min(minIdle, maxSize));
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setValidationTimeout(validationTimeoutMs);
+        config.setKeepaliveTime(keepaliveMs);
+        config.setLeakDetectionThreshold(leakDetectionMs);
+
+        // Don't refuse to start when the database is unreachable, connections are retried in the background
+        config.setInitializationFailTimeout(-1);
+
+        // Server-side prepared statements, cached per pooled connection by the driver
+        config.addDataSourceProperty("prepareThreshold", prepareThreshold);
+        config.addDataSourceProperty("preparedStatementCacheQueries", statementCacheQueries);
+        config.addDataSourceProperty("reWriteBatchedInserts", true);
+
+        config.setMetricRegistry(meterRegistry);
+
+        dataSource = new HikariDataSource(config);
+
+        if (migrate) {
+            SchemaMigrations.migrate(dataSource);
+        }
+    }
+
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    public Map<String, Object> getStats() {
+        /**
+         * This method returns the current saturation of the pool
+         *
+         * @return A map containing the following keys:
+         *         - "active": Connections currently borrowed
+         *         - "idle": Connections waiting in the pool
+         *         - "total": Connections currently open
+         *         - "waiting": Threads blocked waiting for a connection
+         *         - "max": The maximum size of the pool
+         *         - "saturation": Percentage of the maximum size currently borrowed
+         */
+        Map<String, Object> stats = new HashMap<>();
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+
+        int active = pool == null ? 0 : pool.getActiveConnections();
+        stats.put("active", active);
+        stats.put("idle", pool == null ? 0 : pool.getIdleConnections());
+        stats.put("total", pool == null ? 0 : pool.getTotalConnections());
+        stats.put("waiting", pool == null ? 0 : pool.getThreadsAwaitingConnection());
+        stats.put("max", maxSize);
+        stats.put("saturation", active * 100.0 / maxSize);
+
+        return stats;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @PreDestroy
+    void close() {
+        dataSource.close();
+    }
+}
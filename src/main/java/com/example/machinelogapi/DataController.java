@@ -10,9 +10,14 @@
 
 package com.example.machinelogapi;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -28,7 +33,7 @@ public class DataController {
     private DataService dataService;
 
     @GetMapping("/overview")
-    public CompletableFuture<Map<String, Object>> getOverview(@RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
+    public CompletableFuture<OverviewResponse> getOverview(@RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
         /**
          * This method is used to get the overview data for a given date and shift.
          * @param date
@@ -42,7 +47,7 @@ public class DataController {
     }
 
     @GetMapping("/machineCard")
-    public CompletableFuture<Map<String, Object>> getMachineCard (@RequestParam(required = true) String machineNumber, @RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
+    public CompletableFuture<MachineCardResponse> getMachineCard (@RequestParam(required = true) String machineNumber, @RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
         /**
          * This method is used to get the machine card data for a given machine number, date, and shift.
          * @param machineNumber
@@ -56,10 +61,90 @@ public class DataController {
         return dataService.getMachineCardData(machineNumber, date, shift);
     }
 
+    @GetMapping("/dashboard")
+    public CompletableFuture<Map<String, Object>> getDashboard(@RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
+        /**
+         * This method is used to get the overview and every machine card for a given date and shift in one request.
+         * @param date
+         * @param shift
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/dashboard?date=2021-07-01&shift=day
+         */
+        return dataService.getDashboardData(date, shift);
+    }
+
+    @GetMapping("/trend")
+    public CompletableFuture<Map<String, Object>> getTrend(@RequestParam(required = true) String from, @RequestParam(required = true) String to,
+                                                           @RequestParam(required = false) List<Integer> machines,
+                                                           @RequestParam(defaultValue = "day") String granularity,
+                                                           @RequestParam(defaultValue = "3") int topFaults) {
+        /**
+         * This method is used to get percent run and the top faults per machine for every shift, day or week in a date range.
+         * @param from
+         * @param to
+         * @param machines Optional, defaults to every machine
+         * @param granularity "shift", "day" or "week"
+         * @param topFaults The number of faults to list per machine and bucket
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/trend?from=2021-07-01&to=2021-09-30&machines=3,17&granularity=week
+         */
+        return dataService.getTrendData(from, to, machines, granularity, topFaults);
+    }
+
+    @GetMapping("/export")
+    public void exportFaults(@RequestParam(required = true) String from, @RequestParam(required = true) String to,
+                             @RequestParam(required = false) List<Integer> machines,
+                             @RequestParam(defaultValue = "csv") String format,
+                             HttpServletResponse response) throws IOException {
+        /**
+         * This method is used to download every fault in a date range, streamed as it is read from the database.
+         * @param from
+         * @param to
+         * @param machines Optional, defaults to every machine
+         * @param format "csv" or "ndjson"
+         * @param response
+         *
+         * Example URL:
+         * http://localhost:8080/api/export?from=2021-07-01&to=2021-09-30&machines=3,17&format=csv
+         */
+        dataService.exportFaults(from, to, machines, format, response);
+    }
+
+    @GetMapping("/exportStats")
+    public CompletableFuture<Map<String, Object>> getExportStats() {
+        /**
+         * This method is used to get the state of the fault exports.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/exportStats
+         */
+        return dataService.getExportStats();
+    }
+
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getLive(@RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
+        /**
+         * This method is used to stream changes to the faults in a given shift as Server-Sent Events,
+         * instead of polling the overview and fault logs.
+         * @param date
+         * @param shift
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/live?date=2021-07-01&shift=day
+         */
+        return dataService.subscribeLive(date, shift);
+    }
+
     @GetMapping("/machineNumbers")
     public CompletableFuture<int[]> getMachineNumbers() {
         /**
-         * This method is used to get the list of machine numbers.
+         * This method is used to get the list of machine numbers, the active knitting machines.
          * @return
          *
          * Example URL:
@@ -68,23 +153,118 @@ public class DataController {
         return dataService.getMachineNumbers();
     }
 
+    @GetMapping("/machines")
+    public CompletableFuture<List<MachineRegistry.Machine>> getMachines() {
+        /**
+         * This method is used to get every machine with its type, site and whether it is active.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/machines
+         */
+        return dataService.getMachines();
+    }
+
+    @PostMapping("/machines")
+    public CompletableFuture<Map<String, Object>> saveMachine(@RequestBody(required = true) Map<String, Object> body) {
+        /**
+         * This method is used to add a machine or change an existing one, without a redeploy.
+         * @param body
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/machines
+         *
+         * Body: { "machineNumber": 29, "type": "knitting", "site": "Long Eaton", "active": true }
+         */
+        int machineNumber = Integer.parseInt(body.get("machineNumber").toString());
+        String type = body.getOrDefault("type", "knitting").toString();
+        String site = body.getOrDefault("site", "Long Eaton").toString();
+        boolean active = Boolean.parseBoolean(body.getOrDefault("active", true).toString());
+
+        return dataService.saveMachine(new MachineRegistry.Machine(machineNumber, type, site, active));
+    }
+
+    @GetMapping("/poolStats")
+    public CompletableFuture<Map<String, Object>> getPoolStats() {
+        /**
+         * This method is used to get the saturation of the database connection pool.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/poolStats
+         */
+        return dataService.getPoolStats();
+    }
+
+    @GetMapping("/executorStats")
+    public CompletableFuture<Map<String, Object>> getExecutorStats() {
+        /**
+         * This method is used to get the queue depth and wait times of the read and write executors.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/executorStats
+         */
+        return dataService.getExecutorStats();
+    }
+
+    @GetMapping("/cacheStats")
+    public CompletableFuture<Map<String, Object>> getCacheStats() {
+        /**
+         * This method is used to get the hit rate of the shift overview cache.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/cacheStats
+         */
+        return dataService.getCacheStats();
+    }
+
+    @GetMapping("/smbStats")
+    public CompletableFuture<Map<String, Object>> getSmbStats() {
+        /**
+         * This method is used to get the connect and transfer times of reads from the file server.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/smbStats
+         */
+        return dataService.getSmbStats();
+    }
+
+    @GetMapping("/tailStats")
+    public CompletableFuture<Map<String, Object>> getTailStats() {
+        /**
+         * This method is used to get how far the live day's fault log CSV has been followed.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/tailStats
+         */
+        return dataService.getTailStats();
+    }
+
     @GetMapping("/faultLog")
-    public CompletableFuture<Map<String, Object>> getFaultLog(@RequestParam(required = true) String machineNumber, @RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
+    public CompletableFuture<FaultLogResponse> getFaultLog(@RequestParam(required = true) String machineNumber, @RequestParam(required = true) String date, @RequestParam(required = true) String shift,
+                                                           @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit) {
         /**
-         * This method is used to get the fault log for a given machine number, date, and shift.
+         * This method is used to get a page of the fault log for a given machine number, date, and shift.
          * @param machineNumber
          * @param date
          * @param shift
+         * @param cursor the "nextCursor" of the previous page, left out for the first page
+         * @param limit the page size, at most page.maxSize
          * @return
          *
          * Example URL:
-         * http://localhost:8080/api/faultLog?machineNumber=3&date=2021-07-01&shift=day
+         * http://localhost:8080/api/faultLog?machineNumber=3&date=2021-07-01&shift=day&limit=100
          */
-        return dataService.getFaultLog(machineNumber, date, shift);
+        return dataService.getFaultLog(machineNumber, date, shift, cursor, limit);
     }
 
     @GetMapping("/faultReport")
-    public CompletableFuture<Map<String, Object>> getFaultReport(@RequestParam(required = true) String machineNumber, @RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
+    public CompletableFuture<FaultReportResponse> getFaultReport(@RequestParam(required = true) String machineNumber, @RequestParam(required = true) String date, @RequestParam(required = true) String shift) {
         /**
          * This method is used to get the fault report for a given machine number, date, and shift.
          * @param machineNumber
@@ -181,15 +361,17 @@ public class DataController {
     }
 
     @GetMapping("/actionList")
-    public CompletableFuture<Map<String, Object>> getActionList() {
+    public CompletableFuture<ActionListResponse> getActionList(@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit) {
         /**
-         * This method is used to get the list of actions.
+         * This method is used to get a page of the list of actions.
+         * @param cursor the "nextCursor" of the previous page, left out for the first page
+         * @param limit the page size, at most page.maxSize
          * @return
          *
          * Example URL:
-         * http://localhost:8080/api/actionList
+         * http://localhost:8080/api/actionList?limit=100
          */
-        return dataService.getActionList();
+        return dataService.getActionList(cursor, limit);
     }
 
     @PostMapping("completeAction")
@@ -273,12 +455,88 @@ public class DataController {
         return dataService.setAccountableKnitter(operator, date, shift, machines);
     }
 
+    @PostMapping("/rebuildRollup")
+    public CompletableFuture<Map<String, Object>> rebuildRollup(@RequestBody(required = true) Map<String, Object> body) {
+        /**
+         * This method is used to rebuild the shift rollup from the faults table for a range of shift dates,
+         * after faults have been loaded or edited outside of the API.
+         * @param body
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/rebuildRollup
+         *
+         * Body: { "from": "2021-07-01", "to": "2021-07-31" }
+         */
+        String from = body.get("from").toString();
+        String to = body.get("to").toString();
+
+        return dataService.rebuildRollup(from, to);
+    }
+
+    @PostMapping("/backfill")
+    public CompletableFuture<Map<String, Object>> startBackfill(@RequestBody(required = true) Map<String, Object> body) {
+        /**
+         * This method is used to start loading the fault logs archived on the file server into the database,
+         * for a range of days. Days already loaded are skipped, so an interrupted backfill is resumed by starting it again.
+         * @param body
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/backfill
+         *
+         * Body: { "from": "2023-01-01", "to": "2023-12-31" }
+         */
+        String from = body.get("from").toString();
+        String to = body.get("to").toString();
+
+        return dataService.startBackfill(from, to);
+    }
+
+    @GetMapping("/backfillStatus")
+    public CompletableFuture<Map<String, Object>> getBackfillStatus() {
+        /**
+         * This method is used to get the progress of the current or last backfill.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/backfillStatus
+         */
+        return dataService.getBackfillStatus();
+    }
+
     @PostMapping("/InputKnittingFaultLog")
     public CompletableFuture<Void> InputKnittingFaultLog(@RequestParam String data) {
 
         return dataService.inputKnittingFaultLog(data);
     }
 
+    @PostMapping(value = "/InputKnittingFaultLogBulk", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public Map<String, Object> InputKnittingFaultLogBulk(InputStream body) throws IOException {
+        /**
+         * This method is used to insert many knitting faults at once, one fault per line of the request body.
+         * The body is parsed as it is streamed in and inserted in batches.
+         * @param body
+         * @return Accepted/rejected counts and a result for every line
+         *
+         * Example URL:
+         * http://localhost:8080/api/InputKnittingFaultLogBulk
+         */
+        return dataService.inputKnittingFaultLogBulk(body);
+    }
+
+    @GetMapping("/ingestStats")
+    public CompletableFuture<Map<String, Object>> getIngestStats() {
+        /**
+         * This method is used to get the state of the knitting fault ingestion queue.
+         * @return
+         *
+         * Example URL:
+         * http://localhost:8080/api/ingestStats
+         */
+        return dataService.getIngestStats();
+    }
+
     @PostMapping("/InputWarpingFaultLog")
     public CompletableFuture<Void> InputWarpingFaultLog(@RequestParam String data) {
 
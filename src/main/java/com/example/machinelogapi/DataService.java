@@ -1,135 +1,281 @@
 /**
  *  This class is the service class for the API
- *   It fetches the data from the database and returns it to the controller.
+ *   It fetches the data from the FaultStore, the database unless storage.engine says otherwise, and returns it to the controller.
  *   It also updates the database with new data, live from the machines.
  *   The methods in this class are annotated with @Async to make them asynchronous.
+ *   Reads and writes run on separate executors, see AsyncConfig, so writes can't starve the dashboards.
  *
  */
 
 package com.example.machinelogapi;
 
+import com.example.machinelogapi.config.AsyncConfig;
+import com.example.machinelogapi.config.DbBulkhead;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import jakarta.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 @Service
 public class DataService {
-    private SQLManager sqlmanager = new SQLManager();
+    private FaultStore faultStore;
+    private Optional<ConnectionPool> connectionPool;
+    private FaultIngestionQueue ingestionQueue;
+    private BulkFaultImporter bulkImporter;
+    private ShiftAggregateCache shiftCache;
+    private DbBulkhead readExecutor;
+    private DbBulkhead writeExecutor;
+    private LiveShiftFeed liveFeed;
+    private SmbAccess smbAccess;
+    private Optional<FaultBackfill> backfill;
+    private FaultLogTail tail;
+    private FaultExporter exporter;
+    private MachineRegistry machineRegistry;
+    private int defaultPageSize;
+    private int maxPageSize;
 
-    public DataService(SQLManager sqlmanager) {
-        this.sqlmanager = sqlmanager;
+    public DataService(FaultStore faultStore, Optional<ConnectionPool> connectionPool, FaultIngestionQueue ingestionQueue, BulkFaultImporter bulkImporter, ShiftAggregateCache shiftCache,
+                       @Qualifier(AsyncConfig.READ_EXECUTOR) DbBulkhead readExecutor, @Qualifier(AsyncConfig.WRITE_EXECUTOR) DbBulkhead writeExecutor, LiveShiftFeed liveFeed,
+                       SmbAccess smbAccess, Optional<FaultBackfill> backfill, FaultLogTail tail, FaultExporter exporter, MachineRegistry machineRegistry,
+                       @Value("${page.defaultSize:500}") int defaultPageSize, @Value("${page.maxSize:2000}") int maxPageSize) {
+        this.faultStore = faultStore;
+        this.connectionPool = connectionPool;
+        this.ingestionQueue = ingestionQueue;
+        this.bulkImporter = bulkImporter;
+        this.shiftCache = shiftCache;
+        this.readExecutor = readExecutor;
+        this.writeExecutor = writeExecutor;
+        this.liveFeed = liveFeed;
+        this.smbAccess = smbAccess;
+        this.backfill = backfill;
+        this.tail = tail;
+        this.exporter = exporter;
+        this.machineRegistry = machineRegistry;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
-    @Async
-    public CompletableFuture<Map<String, Object>> getOverviewData(String date, String shift) {
-        return CompletableFuture.completedFuture(sqlmanager.getOverviewData(date, shift));
+    // Not @Async, the emitter is returned straight away and events are sent from the feed's own threads
+    public SseEmitter subscribeLive(String date, String shift) {
+        return liveFeed.subscribe(date, shift);
     }
 
-    @Async
-    public CompletableFuture<Map<String, Object>> getMachineCardData(String machineNumber, String date, String shift) {
-        return CompletableFuture.completedFuture(sqlmanager.getMachineCardData(machineNumber, date, shift));
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<OverviewResponse> getOverviewData(String date, String shift) {
+        return CompletableFuture.completedFuture(faultStore.getOverviewData(date, shift));
     }
 
-    @Async
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<MachineCardResponse> getMachineCardData(String machineNumber, String date, String shift) {
+        return CompletableFuture.completedFuture(faultStore.getMachineCardData(machineNumber, date, shift));
+    }
+
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<Map<String, Object>> getDashboardData(String date, String shift) {
+        return CompletableFuture.completedFuture(faultStore.getDashboardData(date, shift));
+    }
+
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<Map<String, Object>> getTrendData(String from, String to, List<Integer> machines, String granularity, int topFaults) {
+        return CompletableFuture.completedFuture(faultStore.getTrendData(from, to, machines, granularity, topFaults));
+    }
+
+    // Not @Async, rows are written to the response on the request thread as they are read, so long exports aren't cut off by the async request timeout
+    public void exportFaults(String from, String to, List<Integer> machines, String format, HttpServletResponse response) throws IOException {
+        exporter.export(from, to, machines, format, response);
+    }
+
+    public CompletableFuture<Map<String, Object>> getExportStats() {
+        return CompletableFuture.completedFuture(exporter.getStats());
+    }
+
+    // The machines are answered from memory rather than queued behind database work
     public CompletableFuture<int[]> getMachineNumbers() {
-        return CompletableFuture.completedFuture(sqlmanager.getMachineNumbers());
+        return CompletableFuture.completedFuture(machineRegistry.knitting().numbers());
+    }
+
+    public CompletableFuture<List<MachineRegistry.Machine>> getMachines() {
+        return CompletableFuture.completedFuture(machineRegistry.getMachines());
+    }
+
+    @Async(AsyncConfig.WRITE_EXECUTOR)
+    public CompletableFuture<Map<String, Object>> saveMachine(MachineRegistry.Machine machine) {
+        return CompletableFuture.completedFuture(machineRegistry.save(machine));
+    }
+
+    // Stats are answered straight away rather than queued behind database work
+    public CompletableFuture<Map<String, Object>> getExecutorStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("read", readExecutor.getStats());
+        stats.put("write", writeExecutor.getStats());
+        return CompletableFuture.completedFuture(stats);
+    }
+
+    public CompletableFuture<Map<String, Object>> getPoolStats() {
+        return CompletableFuture.completedFuture(connectionPool.map(ConnectionPool::getStats).orElseGet(DataService::noDatabase));
+    }
+
+    public CompletableFuture<Map<String, Object>> getCacheStats() {
+        return CompletableFuture.completedFuture(shiftCache.getStats());
+    }
+
+    public CompletableFuture<Map<String, Object>> getSmbStats() {
+        return CompletableFuture.completedFuture(smbAccess.getStats());
+    }
+
+    public CompletableFuture<Map<String, Object>> getTailStats() {
+        return CompletableFuture.completedFuture(tail.getStats());
     }
 
-    @Async
-    public CompletableFuture<Map<String, Object>> getFaultLog(String machineNumber, String date, String shift) {
-        return CompletableFuture.completedFuture(sqlmanager.getFaultLog(machineNumber, date, shift));
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<FaultLogResponse> getFaultLog(String machineNumber, String date, String shift, String cursor, Integer limit) {
+        PageCursor after;
+        try {
+            after = PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(FaultLogResponse.ofError(e.getMessage()));
+        }
+        return CompletableFuture.completedFuture(faultStore.getFaultLog(machineNumber, date, shift, after, pageSize(limit)));
     }
 
-    @Async
-    public CompletableFuture<Map<String, Object>> getFaultReport(String machineNumber, String date, String shift) {
-        return CompletableFuture.completedFuture(sqlmanager.getFaultReport(machineNumber, date, shift));
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<FaultReportResponse> getFaultReport(String machineNumber, String date, String shift) {
+        return CompletableFuture.completedFuture(faultStore.getFaultReport(machineNumber, date, shift));
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> saveCorrectiveActions(String date, Integer machineNumber, Boolean isDayShift, List<Map<String, String>> faultsList) {
-        sqlmanager.saveCorrectiveActions(date, machineNumber, isDayShift, faultsList);
+        faultStore.saveCorrectiveActions(date, machineNumber, isDayShift, faultsList);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    @Async(AsyncConfig.READ_EXECUTOR)
     public CompletableFuture<Map<String, Object>> getCorrectiveAction(String date, Integer machineNumber, Boolean isDayShift, String fault) {
-        return CompletableFuture.completedFuture(sqlmanager.getCorrectiveAction(date, machineNumber, isDayShift, fault));
+        return CompletableFuture.completedFuture(faultStore.getCorrectiveAction(date, machineNumber, isDayShift, fault));
     }
 
-    @Async
+    @Async(AsyncConfig.READ_EXECUTOR)
     public CompletableFuture<Boolean> getLinearThread(String date, Integer machineNumber, Boolean isDayShift) {
-        return CompletableFuture.completedFuture(sqlmanager.getLinearThread(date, machineNumber, isDayShift));
+        return CompletableFuture.completedFuture(faultStore.getLinearThread(date, machineNumber, isDayShift));
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> setLinearThread(String date, Integer machineNumber, Boolean isDayShift, Boolean linearThread) {
-        sqlmanager.setLinearThread(date, machineNumber, isDayShift, linearThread);
+        faultStore.setLinearThread(date, machineNumber, isDayShift, linearThread);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
-    public CompletableFuture<Map<String, Object>> getActionList() {
-        return CompletableFuture.completedFuture(sqlmanager.getActionList());
+    @Async(AsyncConfig.READ_EXECUTOR)
+    public CompletableFuture<ActionListResponse> getActionList(String cursor, Integer limit) {
+        PageCursor after;
+        try {
+            after = PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ActionListResponse.ofError(e.getMessage()));
+        }
+        return CompletableFuture.completedFuture(faultStore.getActionList(after, pageSize(limit)));
     }
 
-    @Async
+    private int pageSize(Integer limit) {
+        // Pages are never larger than page.maxSize, whatever the client asks for
+        return limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> completeAction(Integer id, String date) {
-        sqlmanager.completeAction(id, date);
+        faultStore.completeAction(id, date);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    @Async(AsyncConfig.READ_EXECUTOR)
     public CompletableFuture<Map<Integer, String>> getOperators() {
-        return CompletableFuture.completedFuture(sqlmanager.getOperators());
+        return CompletableFuture.completedFuture(faultStore.getOperators());
     }
 
-    @Async
+    @Async(AsyncConfig.READ_EXECUTOR)
     public CompletableFuture<Map<Integer, String>> checkAccountableKnitter(String date, String shift, List<Integer> machines) {
-        return CompletableFuture.completedFuture(sqlmanager.checkAccountableKnitter(date, shift, machines));
+        return CompletableFuture.completedFuture(faultStore.checkAccountableKnitter(date, shift, machines));
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> removeFault(Integer ID) {
-        sqlmanager.removeFault(ID);
+        faultStore.removeFault(ID);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> setAccountableKnitter(Integer Operator, String date, String shift, List<Integer> Machines) {
-        sqlmanager.SetAccountableKnitter(Operator, date, shift, Machines);
+        faultStore.SetAccountableKnitter(Operator, date, shift, Machines);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    // Not @Async, it only queues the fault, which is written to the database in batches by the ingestion queue
     public CompletableFuture<Void> inputKnittingFaultLog(String data) {
-        sqlmanager.inputKnittingFaultLog(data);
+        ingestionQueue.submit(data);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    // Not @Async, the request body can only be read on the request thread
+    public Map<String, Object> inputKnittingFaultLogBulk(InputStream body) throws IOException {
+        return bulkImporter.importKnittingFaults(body);
+    }
+
+    public CompletableFuture<Map<String, Object>> getIngestStats() {
+        return CompletableFuture.completedFuture(ingestionQueue.getStats());
+    }
+
+    @Async(AsyncConfig.WRITE_EXECUTOR)
+    public CompletableFuture<Map<String, Object>> rebuildRollup(String from, String to) {
+        return CompletableFuture.completedFuture(faultStore.rebuildRollup(from, to));
+    }
+
+    // Not @Async, the backfill runs on its own threads and only its connections come from the pool
+    public CompletableFuture<Map<String, Object>> startBackfill(String from, String to) {
+        return CompletableFuture.completedFuture(backfill.map(job -> job.start(from, to)).orElseGet(DataService::noDatabase));
+    }
+
+    public CompletableFuture<Map<String, Object>> getBackfillStatus() {
+        return CompletableFuture.completedFuture(backfill.map(FaultBackfill::getStatus).orElseGet(DataService::noDatabase));
+    }
+
+    private static Map<String, Object> noDatabase() {
+        // The pool and the backfill only exist with the jdbc storage engine
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", "Not available with the memory storage engine");
+        return response;
+    }
+
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> inputWarpingFaultLog(String data) {
-        sqlmanager.inputWarpingFaultLog(data);
+        faultStore.inputWarpingFaultLog(data);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     public CompletableFuture<Void> inputKnittingProductionLog(String data) {
-        sqlmanager.inputKnittingProductionLog(data);
+        faultStore.inputKnittingProductionLog(data);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     CompletableFuture<Void> inputWarpingProductionLog(String data) {
-        sqlmanager.inputWarpingProductionLog(data);
+        faultStore.inputWarpingProductionLog(data);
         return CompletableFuture.completedFuture(null);
     }
 
-    @Async
+    @Async(AsyncConfig.WRITE_EXECUTOR)
     CompletableFuture<Void> inputKnittingWarpRefLog(String data) {
-        sqlmanager.inputKnittingWarpRefLog(data);
+        faultStore.inputKnittingWarpRefLog(data);
         return CompletableFuture.completedFuture(null);
     }
 }
\ No newline at end of file
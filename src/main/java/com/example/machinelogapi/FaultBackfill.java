@@ -0,0 +1,370 @@
+/**
+ *  This class loads the daily fault log CSVs archived on the file server into the faults table.
+ *   Each day is found under its "%runningtime<DDMMYYYY>" folder, parsed with FaultLogTokenizer and loaded with COPY,
+ *   the days in a range being parsed in parallel on a fork-join pool. At most backfill.loadPermits days are
+ *   copied at once, so a backfill never takes more than that many connections from the pool.
+ *   A day and its checkpoint row commit together, so a backfill that stops part way is resumed by running it again:
+ *   days already checkpointed, and days the API already has faults for, are skipped.
+ *   Setting backfill.localDir reads the same folder layout from a local directory instead of the share.
+ *   Once the days are loaded, the shift rollup is rebuilt over them.
+ *   It loads into PostgreSQL, so it is only created when storage.engine is "jdbc".
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PreDestroy;
+import jcifs.smb.NtStatus;
+import jcifs.smb.SmbException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "jdbc", matchIfMissing = true)
+public class FaultBackfill {
+    private static final int MAX_DAYS = 3660;
+    private static final int MAX_ERRORS = 50;
+
+    private static final DateTimeFormatter FOLDER_DATE = DateTimeFormatter.ofPattern("ddMMyyyy");
+    private static final DateTimeFormatter CSV_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final DateTimeFormatter COPY_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private interface Archive {
+        // The location of a day's fault log, or null if there isn't one
+        String find(LocalDate day) throws IOException;
+
+        <T> T read(String location, SmbAccess.ContentReader<T> reader) throws IOException;
+    }
+
+    private record ParsedDay(String csv, int rows, int rejected) {}
+
+    private static final class Job {
+        final LocalDate from;
+        final LocalDate to;
+        final LocalDateTime started = LocalDateTime.now();
+        volatile LocalDateTime finished;
+        volatile boolean running = true;
+
+        final AtomicInteger days = new AtomicInteger();
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger missing = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        volatile Map<String, Object> rollup;
+
+        Job(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void error(String message) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+    }
+
+    private final SQLManager sqlmanager;
+    private final FaultPartitions partitions;
+    private final FaultDictionary dictionary;
+    private final Archive archive;
+    private final ForkJoinPool parsers;
+    private final Semaphore loadPermits;
+
+    private volatile Job job;
+
+    FaultBackfill(SQLManager sqlmanager, FaultPartitions partitions, FaultDictionary dictionary, SmbAccess smb,
+                  @Value("${backfill.smbUrl:smb://10.10.2.5/Long Eaton/STILLAGE REPORTS/}") String smbUrl,
+                  @Value("${backfill.localDir:}") String localDir,
+                  @Value("${backfill.parallelism:4}") int parallelism,
+                  @Value("${backfill.loadPermits:2}") int loadPermits) {
+        this.sqlmanager = sqlmanager;
+        this.partitions = partitions;
+        this.dictionary = dictionary;
+        this.archive = localDir.isBlank() ? smbArchive(smb, smbUrl) : localArchive(Paths.get(localDir));
+        this.parsers = new ForkJoinPool(parallelism);
+        this.loadPermits = new Semaphore(loadPermits);
+    }
+
+    public synchronized Map<String, Object> start(String from, String to) {
+        /**
+         * This method starts loading the archived fault logs for a range of days in the background
+         *
+         * @param from: The first day in the format "yyyy-MM-dd"
+         *            Example: "2023-01-01"
+         *
+         * @param to: The last day in the format "yyyy-MM-dd"
+         *          Example: "2023-12-31"
+         *
+         * @return The status of the backfill, see getStatus, or a map with an "error" key if it could not be started
+         */
+        Map<String, Object> response = new HashMap<>();
+
+        LocalDate firstDay;
+        LocalDate lastDay;
+        try {
+            firstDay = LocalDate.parse(from);
+            lastDay = LocalDate.parse(to);
+        } catch (DateTimeParseException e) {
+            response.put("error", "Invalid date: " + e.getParsedString());
+            return response;
+        }
+
+        if (lastDay.isBefore(firstDay) || ChronoUnit.DAYS.between(firstDay, lastDay) >= MAX_DAYS) {
+            response.put("error", "The range must be from one to " + MAX_DAYS + " days");
+            return response;
+        }
+        if (job != null && job.running) {
+            response.put("error", "A backfill from " + job.from + " to " + job.to + " is already running");
+            return response;
+        }
+
+        Job newJob = new Job(firstDay, lastDay);
+        job = newJob;
+        Thread.ofVirtual().name("fault-backfill").start(() -> run(newJob));
+
+        return getStatus();
+    }
+
+    public Map<String, Object> getStatus() {
+        /**
+         * This method returns the progress of the current or last backfill
+         *
+         * @return A map containing the following keys:
+         *         - "running": Whether the backfill is still going
+         *         - "from", "to": The range of days
+         *         - "days": The number of days in the range
+         *         - "loaded", "skipped", "missing", "failed": Days loaded, already loaded, with no fault log, and that could not be loaded
+         *         - "rows", "rejected": Faults loaded, and lines that could not be
+         *         - "errors": The first errors, one per failed day or rejected line
+         *         - "rollup": The result of rebuilding the rollup, once the days are loaded
+         */
+        Map<String, Object> status = new HashMap<>();
+        Job current = job;
+        if (current == null) {
+            status.put("running", false);
+            return status;
+        }
+
+        status.put("running", current.running);
+        status.put("from", current.from.toString());
+        status.put("to", current.to.toString());
+        status.put("started", current.started.format(COPY_DATE));
+        if (current.finished != null) {
+            status.put("finished", current.finished.format(COPY_DATE));
+        }
+        status.put("days", current.days.get());
+        status.put("loaded", current.loaded.get());
+        status.put("skipped", current.skipped.get());
+        status.put("missing", current.missing.get());
+        status.put("failed", current.failed.get());
+        status.put("rows", current.rows.get());
+        status.put("rejected", current.rejected.get());
+        status.put("errors", new ArrayList<>(current.errors));
+        if (current.rollup != null) {
+            status.put("rollup", current.rollup);
+        }
+        return status;
+    }
+
+    @PreDestroy
+    void close() {
+        parsers.shutdownNow();
+    }
+
+    private void run(Job job) {
+        try {
+            Set<LocalDate> done = sqlmanager.getBackfilledDays(job.from, job.to);
+
+            // Archived months go straight into their own partitions rather than through faults_default
+            partitions.ensure(job.from, job.to.plusDays(1));
+
+            List<Callable<LocalDate>> tasks = new ArrayList<>();
+            for (LocalDate day = job.from; !day.isAfter(job.to); day = day.plusDays(1)) {
+                job.days.incrementAndGet();
+                if (done.contains(day)) {
+                    job.skipped.incrementAndGet();
+                    continue;
+                }
+                LocalDate taskDay = day;
+                tasks.add(() -> loadDay(job, taskDay));
+            }
+
+            LocalDate firstLoaded = null;
+            LocalDate lastLoaded = null;
+            for (var result : parsers.invokeAll(tasks)) {
+                LocalDate day = result.get();
+                if (day != null) {
+                    firstLoaded = firstLoaded == null || day.isBefore(firstLoaded) ? day : firstLoaded;
+                    lastLoaded = lastLoaded == null || day.isAfter(lastLoaded) ? day : lastLoaded;
+                }
+            }
+
+            if (firstLoaded != null) {
+                // Faults after midnight belong to the previous day's night shift
+                job.rollup = sqlmanager.rebuildRollup(firstLoaded.minusDays(1).toString(), lastLoaded.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            job.error(e.toString());
+        } finally {
+            job.finished = LocalDateTime.now();
+            job.running = false;
+        }
+    }
+
+    private LocalDate loadDay(Job job, LocalDate day) {
+        // Returns the day if it was loaded, every failure is recorded on the job rather than thrown
+        try {
+            String location = archive.find(day);
+            if (location == null) {
+                job.missing.incrementAndGet();
+                return null;
+            }
+
+            ParsedDay parsed = archive.read(location, in -> parse(job, day, in));
+
+            loadPermits.acquire();
+            try {
+                job.rows.addAndGet(sqlmanager.copyKnittingFaults(day, location, new StringReader(parsed.csv()), parsed.rejected()));
+            } finally {
+                loadPermits.release();
+            }
+
+            job.rejected.addAndGet(parsed.rejected());
+            job.loaded.incrementAndGet();
+            return day;
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+            job.failed.incrementAndGet();
+            job.error(day + ": " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.failed.incrementAndGet();
+            return null;
+        }
+    }
+
+    private ParsedDay parse(Job job, LocalDate day, InputStream in) throws IOException {
+        StringBuilder csv = new StringBuilder(64 * 1024);
+        int rows = 0;
+        int rejected = 0;
+
+        FaultLogTokenizer tokenizer = new FaultLogTokenizer(in, ';');
+        tokenizer.nextRow(); // Skip line denoting delimiter
+        tokenizer.nextRow(); // Skip header
+
+        int line = 2;
+        while (tokenizer.nextRow()) {
+            line++;
+            try {
+                LocalDateTime date = LocalDateTime.parse(tokenizer.trimmedField(0), CSV_DATE);
+                int faultCode = tokenizer.intField(1);
+                int operatorCode = tokenizer.intField(3);
+                long faultSeconds = tokenizer.secondsField(5);
+                int machineNumber = tokenizer.intField(6);
+
+                // Checked here, one unknown code would otherwise fail the whole day's COPY on the foreign key
+                if (dictionary.getFaultDescription(faultCode) == null) {
+                    throw new IllegalArgumentException("Unknown fault code " + faultCode);
+                }
+                if (dictionary.getOperatorName(operatorCode) == null) {
+                    throw new IllegalArgumentException("Unknown operator code " + operatorCode);
+                }
+
+                csv.append(date.format(COPY_DATE)).append(',')
+                        .append(faultCode).append(',')
+                        .append(operatorCode).append(',')
+                        .append(faultSeconds).append(" seconds,")
+                        .append(machineNumber).append('\n');
+                rows++;
+            } catch (RuntimeException e) {
+                rejected++;
+                job.error(day + " line " + line + ": " + e.getMessage());
+            }
+        }
+
+        return new ParsedDay(csv.toString(), rows, rejected);
+    }
+
+    private static Archive smbArchive(SmbAccess smb, String smbUrl) {
+        return new Archive() {
+            @Override
+            public String find(LocalDate day) throws IOException {
+                String folder = smbUrl + "%runningtime" + day.format(FOLDER_DATE) + "/";
+                try {
+                    for (String name : smb.list(folder)) {
+                        if (name.endsWith(FaultLogFile.FILE_SUFFIX)) {
+                            return folder + name;
+                        }
+                    }
+                } catch (SmbException e) {
+                    if (e.getNtStatus() == NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND || e.getNtStatus() == NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND) {
+                        return null;
+                    }
+                    throw e;
+                }
+                return null;
+            }
+
+            @Override
+            public <T> T read(String location, SmbAccess.ContentReader<T> reader) throws IOException {
+                return smb.read(location, reader);
+            }
+        };
+    }
+
+    private static Archive localArchive(Path root) {
+        return new Archive() {
+            @Override
+            public String find(LocalDate day) throws IOException {
+                Path folder = root.resolve("%runningtime" + day.format(FOLDER_DATE));
+                if (!Files.isDirectory(folder)) {
+                    return null;
+                }
+                try (Stream<Path> files = Files.list(folder)) {
+                    return files.filter(file -> file.getFileName().toString().endsWith(FaultLogFile.FILE_SUFFIX))
+                            .findFirst()
+                            .map(Path::toString)
+                            .orElse(null);
+                }
+            }
+
+            @Override
+            public <T> T read(String location, SmbAccess.ContentReader<T> reader) throws IOException {
+                try (InputStream in = Files.newInputStream(Paths.get(location))) {
+                    return reader.read(in);
+                }
+            }
+        };
+    }
+}
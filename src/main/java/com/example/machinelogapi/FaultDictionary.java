@@ -0,0 +1,193 @@
+/**
+ *  This class keeps the fault_codes and operators tables in memory.
+ *   Both tables are small and rarely change, so the FaultStore resolves codes and descriptions here
+ *   instead of joining or querying them on every request.
+ *   The tables are loaded at startup and reloaded periodically, or early when a lookup misses.
+ *   A miss reloads in the background and answers from the tables as they are, callers often hold a pooled connection
+ *   of their own while they look codes up, and waiting on a second one could stall them until the pool times out.
+ *   Callers that hold no connection and would otherwise turn a code away, such as the ingestion queue, use refreshIfStale to reload first.
+ *   With no database, when storage.engine is "memory", both are read from storage.memory.faultCodes and storage.memory.operators instead.
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class FaultDictionary {
+
+    private record Snapshot(Map<Integer, String> faultDescriptions, Map<String, Integer> faultCodes, Map<Integer, String> operators) {}
+
+    private final ConnectionPool pool;
+    private final long minMissRefreshMs;
+    private final String seedFaultCodes;
+    private final String seedOperators;
+
+    // Replaced as a whole on every reload, so readers never see a half loaded dictionary
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of(), Map.of());
+    private final AtomicLong lastRefresh = new AtomicLong();
+    private final AtomicBoolean missRefreshRunning = new AtomicBoolean();
+
+    FaultDictionary(Optional<ConnectionPool> pool, @Value("${dictionary.minMissRefreshMs:10000}") long minMissRefreshMs,
+                    @Value("${storage.memory.faultCodes:}") String seedFaultCodes,
+                    @Value("${storage.memory.operators:}") String seedOperators) {
+        this.pool = pool.orElse(null);
+        this.minMissRefreshMs = minMissRefreshMs;
+        this.seedFaultCodes = seedFaultCodes;
+        this.seedOperators = seedOperators;
+    }
+
+    @PostConstruct
+    void load() {
+        try {
+            refresh();
+        } catch (SQLException e) {
+            // Retried by the scheduled refresh or the first lookup that misses
+            e.printStackTrace();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${dictionary.refreshMs:300000}", initialDelayString = "${dictionary.refreshMs:300000}")
+    void scheduledRefresh() {
+        load();
+    }
+
+    public synchronized void refresh() throws SQLException {
+        Map<Integer, String> faultDescriptions = new HashMap<>();
+        Map<String, Integer> faultCodes = new HashMap<>();
+        Map<Integer, String> operators = new HashMap<>();
+
+        if (pool == null) {
+            faultDescriptions.putAll(parseSeed(seedFaultCodes));
+            faultDescriptions.forEach((code, description) -> faultCodes.put(description, code));
+            operators.putAll(parseSeed(seedOperators));
+            snapshot = new Snapshot(Map.copyOf(faultDescriptions), Map.copyOf(faultCodes), Map.copyOf(operators));
+            lastRefresh.set(System.currentTimeMillis());
+            return;
+        }
+
+        try (Connection con = pool.getConnection()) {
+            try (PreparedStatement pstmt = con.prepareStatement("SELECT code, description FROM fault_codes;");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    faultDescriptions.put(rs.getInt(1), rs.getString(2));
+                    faultCodes.put(rs.getString(2), rs.getInt(1));
+                }
+            }
+
+            try (PreparedStatement pstmt = con.prepareStatement("SELECT code, name FROM operators;");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    operators.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+
+        snapshot = new Snapshot(Map.copyOf(faultDescriptions), Map.copyOf(faultCodes), Map.copyOf(operators));
+        lastRefresh.set(System.currentTimeMillis());
+    }
+
+    public Integer getFaultCode(String description) {
+        /**
+         * This method returns the code for a fault description, or null if there is no such fault yet
+         */
+        Integer code = snapshot.faultCodes().get(description);
+        if (code == null) {
+            refreshAfterMiss();
+        }
+        return code;
+    }
+
+    public String getFaultDescription(int code) {
+        /**
+         * This method returns the description for a fault code, or null if there is no such fault
+         */
+        String description = snapshot.faultDescriptions().get(code);
+        if (description == null) {
+            refreshAfterMiss();
+        }
+        return description;
+    }
+
+    public String getOperatorName(int code) {
+        /**
+         * This method returns the name of an operator, or null if there is no such operator
+         */
+        String name = snapshot.operators().get(code);
+        if (name == null) {
+            refreshAfterMiss();
+        }
+        return name;
+    }
+
+    public boolean hasFaultCode(int code) {
+        return snapshot.faultDescriptions().containsKey(code);
+    }
+
+    public boolean hasOperator(int code) {
+        return snapshot.operators().containsKey(code);
+    }
+
+    public void refreshIfStale() {
+        /**
+         * This method reloads the tables now, and waits for it, unless they were reloaded in the last dictionary.minMissRefreshMs
+         * Only call it without holding a pooled connection, the reload takes one of its own
+         */
+        if (claimMissRefresh()) {
+            load();
+        }
+    }
+
+    public Map<Integer, String> getOperators() {
+        return snapshot.operators();
+    }
+
+    private static Map<Integer, String> parseSeed(String seed) {
+        // "code:name" pairs separated by commas, Example: "1:Standing,2:False Stop"
+        Map<Integer, String> entries = new HashMap<>();
+        for (String entry : seed.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator > 0) {
+                entries.put(Integer.parseInt(entry.substring(0, separator).trim()), entry.substring(separator + 1).trim());
+            }
+        }
+        return entries;
+    }
+
+    private boolean claimMissRefresh() {
+        // A miss usually means a row was added since the last load, but don't let unknown codes hammer the database
+        long last = lastRefresh.get();
+        long now = System.currentTimeMillis();
+        return now - last >= minMissRefreshMs && lastRefresh.compareAndSet(last, now);
+    }
+
+    private void refreshAfterMiss() {
+        if (!claimMissRefresh()) {
+            return;
+        }
+
+        // At most one background reload at a time, misses while it runs are answered from the current tables
+        if (missRefreshRunning.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("fault-dictionary-refresh").start(() -> {
+                try {
+                    load();
+                } finally {
+                    missRefreshRunning.set(false);
+                }
+            });
+        }
+    }
+}
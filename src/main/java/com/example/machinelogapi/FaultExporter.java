@@ -0,0 +1,208 @@
+/**
+ *  This class streams the faults over a range of shifts to an HTTP response, as CSV or NDJSON.
+ *   Rows are written as the FaultStore reads them from its cursor and flushed every export.fetchSize rows,
+ *   so memory stays flat however many are exported.
+ *   Rows go through the response's output stream rather than its writer: the servlet writer swallows a failed write,
+ *   while the stream throws, so a client that disconnects fails the next flush, which stops the query and gives its connection
+ *   and export permit back straight away instead of after the whole range has been read.
+ *   Every export holds a database connection while it streams, so at most export.maxConcurrent run at a time.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+@Component
+public class FaultExporter {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CSV_HEADER = "ID,Date,Machine,Fault,Fault Time,Operator\n";
+
+    private final FaultStore faultStore;
+    private final ObjectMapper objectMapper;
+    private final int flushRows;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    FaultExporter(FaultStore faultStore, ObjectMapper objectMapper,
+                  @Value("${export.fetchSize:1000}") int flushRows,
+                  @Value("${export.maxConcurrent:2}") int maxConcurrent) {
+        this.faultStore = faultStore;
+        this.objectMapper = objectMapper;
+        this.flushRows = flushRows;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    public void export(String from, String to, List<Integer> machines, String format, HttpServletResponse response) throws IOException {
+        /**
+         * This method writes every fault from the day shift of one date to the night shift of another to the response
+         *
+         * @param from: The first shift date in the format "yyyy-MM-dd"
+         *            Example: "2021-08-01"
+         *
+         * @param to: The last shift date in the format "yyyy-MM-dd"
+         *            Example: "2021-08-31"
+         *
+         * @param machines: The machine numbers to export, or null for every machine
+         *
+         * @param format: "csv" or "ndjson"
+         *
+         * @param response: Receives the rows, in date order, with the columns ID, Date, Machine, Fault, Fault Time and Operator
+         *                Errors before the first row are sent as { "error": "..." } with a 400 or 503 status
+         */
+        String error = validate(from, to, format);
+        if (error != null) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, error);
+            return;
+        }
+
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many exports running, try again later");
+            return;
+        }
+
+        boolean csv = format.equals("csv");
+        long[] written = {0};
+
+        try {
+            exports.incrementAndGet();
+            response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"faults_" + from + "_" + to + (csv ? ".csv\"" : ".ndjson\""));
+
+            Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+            JsonGenerator json = csv ? null : objectMapper.getFactory().createGenerator(writer);
+            if (csv) {
+                writer.write(CSV_HEADER);
+            }
+
+            faultStore.exportFaults(from, to, machines, (id, date, machineNumber, fault, operator, faultSeconds) -> {
+                String formattedDate = date.format(FORMATTER);
+                String faultTime = KnittingFault.formatFaultTime(faultSeconds);
+
+                if (csv) {
+                    writer.append(Integer.toString(id)).append(',')
+                            .append(formattedDate).append(',')
+                            .append(Integer.toString(machineNumber)).append(',')
+                            .append(csvField(fault)).append(',')
+                            .append(faultTime).append(',')
+                            .append(csvField(operator)).append('\n');
+                } else {
+                    json.writeStartObject();
+                    json.writeNumberField("ID", id);
+                    json.writeStringField("Date", formattedDate);
+                    json.writeNumberField("Machine", machineNumber);
+                    json.writeStringField("Fault", fault);
+                    json.writeStringField("Fault Time", faultTime);
+                    json.writeStringField("Operator", operator);
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+
+                // Flushing sends what has been written so far, and finds out soonest if the client has gone
+                if (++written[0] % flushRows == 0) {
+                    if (json != null) {
+                        json.flush();
+                    }
+                    writer.flush();
+                }
+            });
+
+            if (json != null) {
+                json.flush();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // The client went away, the store has already stopped its query
+            cancelled.incrementAndGet();
+        } catch (RuntimeException e) {
+            // The response has already started, so it is left cut short
+            failures.incrementAndGet();
+            e.printStackTrace();
+        } finally {
+            rows.addAndGet(written[0]);
+            permits.release();
+        }
+    }
+
+    private static String validate(String from, String to, String format) {
+        if (!format.equals("csv") && !format.equals("ndjson")) {
+            return "Format must be csv or ndjson";
+        }
+
+        try {
+            if (LocalDate.parse(to).isBefore(LocalDate.parse(from))) {
+                return "to must not be before from";
+            }
+        } catch (DateTimeParseException e) {
+            return "Dates must be in the format yyyy-MM-dd";
+        }
+
+        return null;
+    }
+
+    private void writeError(HttpServletResponse response, int status, String error) throws IOException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", error);
+
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static String csvField(String value) {
+        // Quoted only when it has to be, with any quotes doubled
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    public Map<String, Object> getStats() {
+        /**
+         * This method returns the state of the exports
+         *
+         * @return A map containing the following keys:
+         *         - "running", "maxConcurrent": Exports streaming now and how many may at once
+         *         - "exports", "rows": Exports started and rows written by them
+         *         - "cancelled": Exports stopped because the client disconnected
+         *         - "rejected": Exports turned away because too many were running
+         *         - "failures": Exports that failed part way
+         */
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", maxConcurrent - permits.availablePermits());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("exports", exports.get());
+        stats.put("rows", rows.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("rejected", rejected.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+}
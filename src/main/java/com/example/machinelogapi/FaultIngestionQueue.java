@@ -0,0 +1,253 @@
+/**
+ *  This class buffers knitting faults posted by the machines and writes them to the database in batches.
+ *   A fault is acknowledged as soon as it has been parsed and queued, a single writer thread then
+ *   coalesces queued faults into one multi-row INSERT per batch.
+ *   A batch is flushed once it reaches the maximum batch size or the oldest fault in it has waited the linger time.
+ *   A batch that fails because the database can't be reached is retried until it is written. One the database refuses is split
+ *   in half until the rows it refuses are found, those are dead-lettered and the rest are written.
+ *   On shutdown the queue stops accepting faults and drains everything already accepted.
+ */
+
+package com.example.machinelogapi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class FaultIngestionQueue {
+    private static final Logger log = LoggerFactory.getLogger(FaultIngestionQueue.class);
+
+    private static final int RECENT_DEAD_LETTERS = 20;
+
+    private final FaultStore faultStore;
+    private final FaultDictionary dictionary;
+    private final BlockingQueue<KnittingFault> queue;
+    private final int maxBatchSize;
+    private final long lingerMs;
+    private final long offerTimeoutMs;
+    private final long drainTimeoutMs;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    // The last few dead-lettered faults and why, so they can be corrected and resent
+    private final Deque<Map<String, Object>> recentDeadLetters = new ArrayDeque<>();
+
+    private final Thread writer;
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+
+    FaultIngestionQueue(FaultStore faultStore, FaultDictionary dictionary,
+                        @Value("${ingest.maxBatchSize:500}") int maxBatchSize,
+                        @Value("${ingest.lingerMs:200}") long lingerMs,
+                        @Value("${ingest.queueCapacity:20000}") int queueCapacity,
+                        @Value("${ingest.offerTimeoutMs:1000}") long offerTimeoutMs,
+                        @Value("${ingest.drainTimeoutMs:30000}") long drainTimeoutMs) {
+        this.faultStore = faultStore;
+        this.dictionary = dictionary;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMs = lingerMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.drainTimeoutMs = drainTimeoutMs;
+
+        writer = new Thread(this::writeLoop, "fault-ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void submit(String data) {
+        /**
+         * This method parses a knitting fault and queues it to be written
+         * The data is in the format "dd/MM/yyyy hh:mm:ss;fault_code;fault_description;operator_code;operator_name;fault_time;machine_number"
+         *
+         * @throws IllegalArgumentException if the line can't be parsed or has a fault or operator code that isn't in the database,
+         *         even after reloading the dictionary (at most once every dictionary.minMissRefreshMs)
+         * @throws IllegalStateException if the queue is shutting down or stays full for longer than the offer timeout
+         */
+        KnittingFault fault = KnittingFault.parse(data);
+
+        // Checked here, the database would refuse the row on the foreign key after it had been acknowledged.
+        // A code added since the dictionary was last loaded is read in before the fault is turned away
+        if (!dictionary.hasFaultCode(fault.faultCode()) || !dictionary.hasOperator(fault.operatorCode())) {
+            dictionary.refreshIfStale();
+        }
+        if (dictionary.getFaultDescription(fault.faultCode()) == null) {
+            throw new IllegalArgumentException("Unknown fault code " + fault.faultCode());
+        }
+        if (dictionary.getOperatorName(fault.operatorCode()) == null) {
+            throw new IllegalArgumentException("Unknown operator code " + fault.operatorCode());
+        }
+
+        if (!accepting) {
+            throw new IllegalStateException("Fault ingestion is shutting down");
+        }
+
+        try {
+            if (!queue.offer(fault, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Fault ingestion queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing fault", e);
+        }
+
+        accepted.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("accepted", accepted.get());
+        stats.put("flushed", flushed.get());
+        stats.put("batches", batches.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("deadLettered", deadLettered.get());
+        synchronized (recentDeadLetters) {
+            stats.put("recentDeadLetters", new ArrayList<>(recentDeadLetters));
+        }
+        stats.put("maxBatchSize", maxBatchSize);
+        stats.put("lingerMs", lingerMs);
+        return stats;
+    }
+
+    private void writeLoop() {
+        List<KnittingFault> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                // A batch left over from an interrupted flush is retried before anything new is taken
+                if (batch.isEmpty()) {
+                    KnittingFault first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+
+                // Keep collecting until the batch is full or the first fault has lingered long enough
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    KnittingFault next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // Woken up by shutdown, the loop condition decides whether there is anything left to drain
+                running = false;
+            }
+        }
+    }
+
+    private void flush(List<KnittingFault> batch) throws InterruptedException {
+        long backoffMs = 100;
+
+        while (true) {
+            try {
+                faultStore.insertKnittingFaults(batch);
+                flushed.addAndGet(batch.size());
+                batches.incrementAndGet();
+                return;
+            } catch (RuntimeException e) {
+                failedFlushes.incrementAndGet();
+                log.warn("Failed to write a batch of {} knitting faults", batch.size(), e);
+
+                if (!SqlFailures.isTransient(e)) {
+                    // Retrying the same rows would fail the same way, and hold up every fault queued behind them
+                    splitAndFlush(batch, e);
+                    return;
+                }
+
+                // The database is unreachable, accepted faults are kept and retried with backoff until it is back
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, 5000);
+            }
+        }
+    }
+
+    private void splitAndFlush(List<KnittingFault> batch, RuntimeException failure) throws InterruptedException {
+        if (batch.size() == 1) {
+            deadLetter(batch.get(0), failure);
+            return;
+        }
+
+        // Halving finds a few bad rows in a large batch in a handful of transactions, rather than one per row
+        int half = batch.size() / 2;
+        flush(new ArrayList<>(batch.subList(0, half)));
+        flush(new ArrayList<>(batch.subList(half, batch.size())));
+    }
+
+    void deadLetter(String line, RuntimeException failure) {
+        /**
+         * This method records a fault line that was turned away before it could be queued, such as one the tail read
+         * with a code the dictionary doesn't have, so it is counted and listed with the faults the database refused
+         */
+        recordDeadLetter(line, failure.getMessage());
+    }
+
+    private void deadLetter(KnittingFault fault, RuntimeException failure) {
+        Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+        recordDeadLetter(fault, cause.getMessage());
+    }
+
+    private void recordDeadLetter(Object fault, String error) {
+        log.error("Dead-lettered knitting fault {}: {}", fault, error);
+
+        Map<String, Object> deadLetter = new LinkedHashMap<>();
+        deadLetter.put("fault", fault);
+        deadLetter.put("error", error);
+
+        deadLettered.incrementAndGet();
+        synchronized (recentDeadLetters) {
+            recentDeadLetters.addLast(deadLetter);
+            if (recentDeadLetters.size() > RECENT_DEAD_LETTERS) {
+                recentDeadLetters.removeFirst();
+            }
+        }
+    }
+
+    @PreDestroy
+    void drain() {
+        accepting = false;
+        running = false;
+
+        try {
+            writer.join(drainTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writer.isAlive()) {
+            writer.interrupt();
+            log.warn("Fault ingestion drain timed out with {} faults still queued", queue.size());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *  One day's "All Machines Knitting MCs Fault Log.csv", parsed once.
+ *   Every aggregate the CSVParser reports need is built in a single pass over the file,
+ *   so the overview, machine cards, fault logs and fault reports can all be served from one read.
+ *   Rows are read with FaultLogTokenizer, and only the fault log needs them split into columns, so each row is kept as its line.
+ *   Totals keep the rounding the reports have always used, per row and in file order.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class FaultLogFile {
+    static final String FILE_SUFFIX = " All Machines Knitting MCs Fault Log.csv";
+
+    static class MachineFaults {
+        long totalFaultSeconds = 0;
+
+        // Sum of each row's fault time in hours, counting whole minutes only, as the machine card adds them up
+        final Map<String, Double> faultHours = new LinkedHashMap<>();
+
+        // Sum of each row's fault time in hours rounded to 1.d.p, as the fault report adds them up
+        final Map<String, Double> roundedFaultHours = new LinkedHashMap<>();
+        final Map<String, Integer> faultCount = new LinkedHashMap<>();
+        int totalFaults = 0;
+
+        final List<String> rows = new ArrayList<>();
+    }
+
+    private final String[] header;
+    private final Map<Integer, MachineFaults> machines = new LinkedHashMap<>();
+
+    FaultLogFile(InputStream in, char delimiter) throws IOException {
+        FaultLogTokenizer tokenizer = new FaultLogTokenizer(in, delimiter);
+        tokenizer.nextRow(); // Skip line denoting delimiter
+        header = tokenizer.nextRow() ? tokenizer.fields() : new String[0];
+
+        while (tokenizer.nextRow()) {
+            addRow(tokenizer);
+        }
+    }
+
+    FaultLogFile(String[] header) {
+        this.header = header;
+    }
+
+    FaultLogFile copy() {
+        /**
+         * This method returns a copy to add rows to, files that have been shared are never changed
+         */
+        FaultLogFile copy = new FaultLogFile(header);
+        machines.forEach((machineNo, machine) -> {
+            MachineFaults copied = new MachineFaults();
+            copied.totalFaultSeconds = machine.totalFaultSeconds;
+            copied.faultHours.putAll(machine.faultHours);
+            copied.roundedFaultHours.putAll(machine.roundedFaultHours);
+            copied.faultCount.putAll(machine.faultCount);
+            copied.totalFaults = machine.totalFaults;
+            copied.rows.addAll(machine.rows);
+            copy.machines.put(machineNo, copied);
+        });
+        return copy;
+    }
+
+    void addRow(FaultLogTokenizer tokenizer) {
+        /**
+         * This method adds the tokenizer's current row to the totals
+         * Every field is parsed before anything is added, so a row that throws leaves the totals as they were
+         */
+        int machineNo = tokenizer.intField(6);
+        String fault = tokenizer.trimmedField(2); // Fault is in column 3 (index 2)
+        long faultSeconds = tokenizer.secondsField(5);
+        double faultHours = (faultSeconds / 60) / 60.0; // Whole minutes only
+
+        MachineFaults machine = machines.computeIfAbsent(machineNo, key -> new MachineFaults());
+        machine.totalFaultSeconds += faultSeconds;
+        machine.faultHours.merge(fault, faultHours, Double::sum);
+        machine.roundedFaultHours.merge(fault, roundToOneDecimalPlace(faultHours), Double::sum);
+        machine.faultCount.merge(fault, 1, Integer::sum);
+        machine.totalFaults++;
+        machine.rows.add(tokenizer.line());
+    }
+
+    String[] getHeader() {
+        return header;
+    }
+
+    Map<Integer, MachineFaults> getMachines() {
+        return machines;
+    }
+
+    MachineFaults getMachine(String machineNumber) {
+        // Records for another machine, or a machine number that isn't a number, match nothing
+        try {
+            return machines.getOrDefault(Integer.parseInt(machineNumber.trim()), new MachineFaults());
+        } catch (NumberFormatException e) {
+            return new MachineFaults();
+        }
+    }
+
+    static double roundToOneDecimalPlace(double value) {
+        BigDecimal bd = BigDecimal.valueOf(value);
+        bd = bd.setScale(1, RoundingMode.HALF_UP);
+        return bd.doubleValue();
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ *  A page of the faults logged on one machine in a shift, in the order they happened.
+ *   "nextCursor" is set when there are more faults after this page, see PageCursor.
+ *   Rows keep the keys the fault log has always been sent with, "ID", "Date", "Fault", "Fault Time" and "Operator".
+ */
+
+package com.example.machinelogapi;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FaultLogResponse(String machineNumber, List<Row> faultLog, String[] headers, String nextCursor, String error) {
+
+    static final String[] HEADERS = {"Date", "Fault", "Fault Time", "Operator"};
+
+    public record Row(@JsonProperty("ID") long id,
+                      @JsonProperty("Date") String date,
+                      @JsonProperty("Fault") String fault,
+                      @JsonProperty("Fault Time") String faultTime,
+                      @JsonProperty("Operator") String operator) {}
+
+    public static FaultLogResponse ofError(String error) {
+        return new FaultLogResponse(null, null, null, null, error);
+    }
+}
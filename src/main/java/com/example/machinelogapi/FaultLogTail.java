@@ -0,0 +1,245 @@
+/**
+ *  This class follows the live day's fault log CSV on the file server as the machines append to it.
+ *   Every tail.intervalMs it compares the file's size and modified time with the last poll, and reads only the bytes
+ *   after the last complete line it consumed. A line with no line break yet is left for the next poll.
+ *   New rows are added to a copy of the file's totals, which is then handed to CSVParser's cache,
+ *   so the CSVParser reports for today are answered without reading the file again.
+ *   A file that shrinks, or changes without growing, has been rotated or rewritten and is read again from the start.
+ *   When the day rolls over, the old day's file is read one last time from its offset before the new day's file is followed.
+ *   With tail.toDatabase set, new rows also go to the database through the ingestion queue. Rows already in the file
+ *   at the first poll after startup are not sent. Every file found after that is sent from its first row,
+ *   except one rewritten in place, which is sent from the first row past those already read.
+ *   A row the ingestion queue turns away is not read again, it is counted as unsent and dead-lettered in the queue.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jcifs.smb.NtStatus;
+import jcifs.smb.SmbException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class FaultLogTail {
+    private static final DateTimeFormatter FOLDER_DATE = DateTimeFormatter.ofPattern("ddMMyyyy");
+
+    // rowCount is the number of rows read from the start of the file, parsed or not
+    private record TailState(String path, long offset, long lastModified, long size, boolean bigEndian, long rowCount, FaultLogFile file) {}
+
+    private record TailRead(FaultLogFile file, long bytesConsumed, boolean bigEndian, long rowCount, List<String> appended, List<String> toSend, int rejected) {}
+
+    private final SmbAccess smb;
+    private final CSVParser csvParser;
+    private final FaultIngestionQueue ingestionQueue;
+    private final boolean enabled;
+    private final boolean toDatabase;
+
+    private volatile TailState state;
+    private boolean started;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong unsent = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    FaultLogTail(SmbAccess smb, CSVParser csvParser, FaultIngestionQueue ingestionQueue,
+                 @Value("${tail.enabled:false}") boolean enabled,
+                 @Value("${tail.toDatabase:false}") boolean toDatabase) {
+        this.smb = smb;
+        this.csvParser = csvParser;
+        this.ingestionQueue = ingestionQueue;
+        this.enabled = enabled;
+        this.toDatabase = toDatabase;
+    }
+
+    @Scheduled(fixedDelayString = "${tail.intervalMs:30000}")
+    void scheduledPoll() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            poll(LocalDate.now());
+        } catch (IOException | RuntimeException e) {
+            // Tried again on the next poll, from the same offset
+            failures.incrementAndGet();
+            e.printStackTrace();
+        }
+    }
+
+    synchronized void poll(LocalDate day) throws IOException {
+        /**
+         * This method reads whatever has been added to a day's fault log since the last poll
+         *
+         * @param day: The day whose fault log to follow, the live day when run on the schedule
+         */
+        polls.incrementAndGet();
+        pollFile(day);
+
+        // From here on any file found was written while tailing, and all of it is sent
+        started = true;
+    }
+
+    private void pollFile(LocalDate day) throws IOException {
+        TailState current = state;
+        String folder = csvParser.smbUrl + "%runningtime" + day.format(FOLDER_DATE) + "/";
+        String path = current != null && current.path().startsWith(folder) ? current.path() : find(folder);
+        if (path == null) {
+            return;
+        }
+        if (current != null && !current.path().equals(path)) {
+            // The day has rolled over, pick up what the old day's file got since its last poll before following the new one
+            finish(current);
+            current = null;
+        }
+
+        SmbAccess.FileInfo info = smb.stat(path);
+        if (current != null && info.size() == current.size() && info.lastModified() == current.lastModified()) {
+            return;
+        }
+
+        boolean rotated = current != null && info.size() < current.offset();
+        boolean rewritten = current != null && !rotated
+                && info.size() <= current.size() && info.lastModified() != current.lastModified();
+        if (rotated || rewritten) {
+            resets.incrementAndGet();
+        }
+
+        // Rows already in the file when tailing starts are not sent. After that a new or rotated file is sent from its first row,
+        // and a file rewritten in place from the first row past those read before
+        long sendFrom;
+        if (!started && current == null) {
+            sendFrom = Long.MAX_VALUE;
+        } else if (rewritten) {
+            sendFrom = current.rowCount();
+        } else {
+            sendFrom = 0;
+        }
+
+        read(path, info, rotated || rewritten ? null : current, sendFrom);
+    }
+
+    private void finish(TailState previous) throws IOException {
+        SmbAccess.FileInfo info = smb.stat(previous.path());
+        if (info.size() > previous.offset()) {
+            read(previous.path(), info, previous, 0);
+        }
+    }
+
+    private void read(String path, SmbAccess.FileInfo info, TailState from, long sendFrom) throws IOException {
+        TailRead read = smb.read(path, from == null ? 0 : from.offset(), in -> {
+            FaultLogTokenizer tokenizer = new FaultLogTokenizer(in, csvParser.delimiter, from == null ? null : from.bigEndian(), true);
+            FaultLogFile file;
+            if (from == null) {
+                tokenizer.nextRow(); // Skip line denoting delimiter
+                if (!tokenizer.nextRow()) {
+                    return null; // The header hasn't been written yet
+                }
+                file = new FaultLogFile(tokenizer.fields());
+            } else {
+                file = from.file().copy();
+            }
+
+            long rowCount = from == null ? 0 : from.rowCount();
+            List<String> appended = new ArrayList<>();
+            List<String> toSend = new ArrayList<>();
+            int invalid = 0;
+            while (tokenizer.nextRow()) {
+                try {
+                    file.addRow(tokenizer);
+                    appended.add(tokenizer.line());
+                    if (rowCount >= sendFrom) {
+                        toSend.add(tokenizer.line());
+                    }
+                } catch (RuntimeException e) {
+                    invalid++;
+                }
+                rowCount++;
+            }
+            return new TailRead(file, tokenizer.bytesConsumed(), tokenizer.isBigEndian(), rowCount, appended, toSend, invalid);
+        });
+
+        if (read == null) {
+            return;
+        }
+
+        long offset = (from == null ? 0 : from.offset()) + read.bytesConsumed();
+        state = new TailState(path, offset, info.lastModified(), info.size(), read.bigEndian(), read.rowCount(), read.file());
+        rows.addAndGet(read.appended().size());
+        rejected.addAndGet(read.rejected());
+
+        csvParser.putFaultLog(path, read.file(), info.lastModified(), info.size());
+
+        // Only once the offset has moved past them, so a failed read can't send the same rows twice
+        if (toDatabase) {
+            for (String line : read.toSend()) {
+                try {
+                    ingestionQueue.submit(line);
+                    sent.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // The offset is already past it, so it is kept with the dead letters to be corrected and resent
+                    unsent.incrementAndGet();
+                    ingestionQueue.deadLetter(line, e);
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        /**
+         * This method returns the state of the tail
+         *
+         * @return A map containing the following keys:
+         *         - "enabled": Whether the tail is running on its schedule
+         *         - "file", "offset": The file being followed and the byte it has been read up to
+         *         - "polls", "rows", "rejected", "sent": Polls made, rows read, rows that could not be parsed, and rows sent to the database
+         *         - "unsent": Rows the ingestion queue turned away, such as ones with an unknown code, dead-lettered there
+         *         - "resets": Times the file was rotated or rewritten and read again from the start
+         *         - "failures": Polls that threw
+         */
+        Map<String, Object> stats = new HashMap<>();
+        TailState current = state;
+        stats.put("enabled", enabled);
+        if (current != null) {
+            stats.put("file", current.path());
+            stats.put("offset", current.offset());
+        }
+        stats.put("polls", polls.get());
+        stats.put("rows", rows.get());
+        stats.put("rejected", rejected.get());
+        stats.put("sent", sent.get());
+        stats.put("unsent", unsent.get());
+        stats.put("resets", resets.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    private String find(String folder) throws IOException {
+        try {
+            for (String name : smb.list(folder)) {
+                if (name.endsWith(FaultLogFile.FILE_SUFFIX)) {
+                    return folder + name;
+                }
+            }
+        } catch (SmbException e) {
+            if (e.getNtStatus() == NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND || e.getNtStatus() == NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND) {
+                return null; // No folder yet for the day
+            }
+            throw e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ *  Reads the rows of a UTF-16 fault log CSV without building a String per line or per field.
+ *   Bytes are decoded straight into one reused char buffer, and each row is only a set of field offsets into it,
+ *   so numbers and "hh:mm:ss" fault times are parsed where they sit. Strings are made only for the fields asked for.
+ *   Rows split the way String.split does (trailing empty fields dropped) and lines end the way BufferedReader's do,
+ *   so results match the split based parsing this replaces.
+ *   For a file that is still being written, a tokenizer can start part way through and leave out a trailing
+ *   line with no line break yet, reporting the byte offset to carry on from next time.
+ *   A tokenizer belongs to the one stream it reads and keeps no shared state, so any number can run at once.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+final class FaultLogTokenizer {
+
+    private final InputStream in;
+    private final char delimiter;
+    private final byte[] bytes = new byte[16384];
+
+    private char[] chars = new char[8192];
+    private int charCount = 0;
+    private int pos = 0;
+
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount = 0;
+
+    private final boolean completeLinesOnly;
+    private boolean bomChecked;
+    private boolean bigEndian = true;
+    private int bomBytes = 0;
+    private long discarded = 0;
+    private int pendingByte = -1;
+    private boolean eof = false;
+
+    FaultLogTokenizer(InputStream in, char delimiter) {
+        this(in, delimiter, null, false);
+    }
+
+    FaultLogTokenizer(InputStream in, char delimiter, Boolean bigEndian, boolean completeLinesOnly) {
+        /**
+         * @param bigEndian: The byte order when reading on from the middle of a file, or null to read it from the BOM
+         * @param completeLinesOnly: Leave out a last line that has no line break yet, for a file that is still being written
+         */
+        this.in = in;
+        this.delimiter = delimiter;
+        this.completeLinesOnly = completeLinesOnly;
+        if (bigEndian != null) {
+            this.bigEndian = bigEndian;
+            this.bomChecked = true;
+        }
+    }
+
+    boolean nextRow() throws IOException {
+        /**
+         * This method moves to the next row, returning false once the stream is exhausted
+         */
+        int scan = pos;
+        while (true) {
+            for (int i = scan; i < charCount; i++) {
+                char c = chars[i];
+                if (c == '\n' || c == '\r') {
+                    if (c == '\r' && i + 1 == charCount && !eof) {
+                        // Can't tell yet whether a '\n' follows and belongs to the same line break
+                        break;
+                    }
+                    if (c == '\r' && i + 1 == charCount && completeLinesOnly) {
+                        return false;
+                    }
+
+                    setLine(pos, i);
+                    pos = i + 1;
+                    if (c == '\r' && pos < charCount && chars[pos] == '\n') {
+                        pos++;
+                    }
+                    return true;
+                }
+            }
+
+            if (eof) {
+                if (pos < charCount && !completeLinesOnly) {
+                    setLine(pos, charCount);
+                    pos = charCount;
+                    return true;
+                }
+                return false;
+            }
+
+            // No line break in what has been read so far, keep the partial line and read more after it
+            scan = Math.max(charCount - 1, pos) - pos;
+            fill();
+            scan += pos;
+        }
+    }
+
+    long bytesConsumed() {
+        /**
+         * This method returns the number of bytes from the start of the stream up to the end of the last row returned,
+         * including its line break and any BOM, which is where reading should resume
+         */
+        return bomBytes + (discarded + pos) * 2;
+    }
+
+    boolean isBigEndian() {
+        return bigEndian;
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    String line() {
+        return new String(chars, lineStart, lineEnd - lineStart);
+    }
+
+    String field(int i) {
+        Objects.checkIndex(i, fieldCount);
+        return new String(chars, fieldStarts[i], fieldEnds[i] - fieldStarts[i]);
+    }
+
+    String[] fields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = field(i);
+        }
+        return fields;
+    }
+
+    String trimmedField(int i) {
+        Objects.checkIndex(i, fieldCount);
+        int start = trimStart(i);
+        return new String(chars, start, trimEnd(i, start) - start);
+    }
+
+    int intField(int i) {
+        /**
+         * This method parses a field as an int, ignoring surrounding whitespace as trim() would
+         *
+         * @throws NumberFormatException if the field is not a whole number
+         */
+        Objects.checkIndex(i, fieldCount);
+        int start = trimStart(i);
+        int end = trimEnd(i, start);
+
+        long value = parseDigits(start, end, i);
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new NumberFormatException("For input string: \"" + field(i) + "\"");
+        }
+        return (int) value;
+    }
+
+    long secondsField(int i) {
+        /**
+         * This method parses a field in the format "hh:mm:ss" as a number of seconds
+         *
+         * @throws NumberFormatException if the field is not three numbers separated by ':'
+         */
+        Objects.checkIndex(i, fieldCount);
+        int start = trimStart(i);
+        int end = trimEnd(i, start);
+
+        long seconds = 0;
+        int partStart = start;
+        int part = 0;
+        for (int c = start; c <= end; c++) {
+            if (c == end || chars[c] == ':') {
+                if (part == 3) {
+                    throw new NumberFormatException("Invalid fault time: \"" + field(i) + "\"");
+                }
+                seconds = seconds * 60 + parseDigits(partStart, c, i);
+                partStart = c + 1;
+                part++;
+            }
+        }
+
+        if (part != 3) {
+            throw new NumberFormatException("Invalid fault time: \"" + field(i) + "\"");
+        }
+        return seconds;
+    }
+
+    private long parseDigits(int start, int end, int field) {
+        boolean negative = false;
+        int c = start;
+        if (c < end && (chars[c] == '-' || chars[c] == '+')) {
+            negative = chars[c] == '-';
+            c++;
+        }
+        if (c == end || end - c > 18) {
+            throw new NumberFormatException("For input string: \"" + field(field) + "\"");
+        }
+
+        long value = 0;
+        for (; c < end; c++) {
+            int digit = chars[c] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + field(field) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private int trimStart(int i) {
+        int start = fieldStarts[i];
+        while (start < fieldEnds[i] && chars[start] <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int i, int start) {
+        int end = fieldEnds[i];
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+        fieldCount = 0;
+
+        int fieldStart = start;
+        boolean split = false;
+        for (int c = start; c < end; c++) {
+            if (chars[c] == delimiter) {
+                addField(fieldStart, c);
+                fieldStart = c + 1;
+                split = true;
+            }
+        }
+        addField(fieldStart, end);
+
+        // As String.split: trailing empty fields are dropped, unless the line has no delimiter at all
+        if (split) {
+            while (fieldCount > 0 && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+                fieldCount--;
+            }
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void fill() throws IOException {
+        // Move the unfinished line to the front, growing the buffer only if the line fills it
+        if (pos > 0) {
+            System.arraycopy(chars, pos, chars, 0, charCount - pos);
+            charCount -= pos;
+            discarded += pos;
+            pos = 0;
+        }
+        if (charCount == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+
+        int free = Math.min(bytes.length, (chars.length - charCount) * 2);
+        int offset = 0;
+        if (pendingByte >= 0) {
+            bytes[0] = (byte) pendingByte;
+            pendingByte = -1;
+            offset = 1;
+        }
+
+        int read = in.read(bytes, offset, free - offset);
+        if (read < 0) {
+            eof = true;
+            if (offset == 1 && !completeLinesOnly) {
+                // Half a character at the end of the stream, decoded as the replacement character like InputStreamReader does
+                chars[charCount++] = '\uFFFD';
+            }
+            return;
+        }
+
+        int length = offset + read;
+        int b = 0;
+        if (!bomChecked) {
+            if (length < 2) {
+                pendingByte = length == 1 ? bytes[0] & 0xFF : -1;
+                return;
+            }
+            bomChecked = true;
+            if ((bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+                b = 2;
+            } else if ((bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+                bigEndian = false;
+                b = 2;
+            }
+            bomBytes = b;
+        }
+
+        for (; b + 1 < length; b += 2) {
+            int high = bigEndian ? bytes[b] : bytes[b + 1];
+            int low = bigEndian ? bytes[b + 1] : bytes[b];
+            chars[charCount++] = (char) (((high & 0xFF) << 8) | (low & 0xFF));
+        }
+        if (b < length) {
+            pendingByte = bytes[b] & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *  This class keeps the monthly partitions of the faults table created ahead of the faults that go in them.
+ *   The partitions for the current month and the partitions.monthsAhead after it are made sure of on startup and then daily,
+ *   and a backfill makes sure of the months it loads into before it starts.
+ *   ensure_fault_partitions, created by the V3 migration, does the work in the database;
+ *   faults for a month that has no partition yet are kept in faults_default and moved when it is created.
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "jdbc", matchIfMissing = true)
+public class FaultPartitions {
+    private final ConnectionPool pool;
+    private final int monthsAhead;
+
+    FaultPartitions(ConnectionPool pool, @Value("${partitions.monthsAhead:3}") int monthsAhead) {
+        this.pool = pool;
+        this.monthsAhead = monthsAhead;
+    }
+
+    @Scheduled(fixedDelayString = "${partitions.checkMs:86400000}")
+    void ensureAhead() {
+        LocalDate today = LocalDate.now();
+        try {
+            ensure(today, today.plusMonths(monthsAhead));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int ensure(LocalDate from, LocalDate to) {
+        /**
+         * This method creates the partition for every month from one day to another that doesn't have one yet
+         *
+         * @param from: A day in the first month
+         *
+         * @param to: A day in the last month
+         *
+         * @return The number of partitions created
+         *
+         * @throws RuntimeException if the partitions could not be created
+         */
+        try (Connection con = pool.getConnection()) {
+            String sql = "SELECT ensure_fault_partitions(?, ?);";
+
+            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                pstmt.setDate(1, java.sql.Date.valueOf(from));
+                pstmt.setDate(2, java.sql.Date.valueOf(to));
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
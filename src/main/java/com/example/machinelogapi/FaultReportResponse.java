@@ -0,0 +1,25 @@
+/**
+ *  The faults on one machine in a shift, totalled per fault, with each fault's share of the count and of the downtime.
+ *   Rows keep the keys the report has always been sent with, in the same order.
+ */
+
+package com.example.machinelogapi;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FaultReportResponse(String machineNumber, Double totalDownTime, List<Row> faultReport, String error) {
+
+    public record Row(@JsonProperty("Fault") String fault,
+                      @JsonProperty("Number of Faults") int count,
+                      @JsonProperty("percentage / count") double countPercentage,
+                      @JsonProperty("Fault Down Time") double downTime,
+                      @JsonProperty("percentage / time") double timePercentage) {}
+
+    public static FaultReportResponse ofError(String error) {
+        return new FaultReportResponse(null, null, null, error);
+    }
+}
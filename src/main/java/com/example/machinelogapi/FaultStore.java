@@ -0,0 +1,88 @@
+/**
+ *  This interface is where DataService reads and writes faults and the shift data around them.
+ *   storage.engine picks the implementation:
+ *   - "jdbc": SQLManager, the PostgreSQL database, the default
+ *   - "memory": InMemoryFaultStore, kept in memory and lost on restart, for running the API locally and under load tests
+ *   Both answer every method with responses of the same shape.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface FaultStore {
+
+    int TREND_MAX_DAYS = 366;
+
+    // Receives exported faults one at a time, see exportFaults
+    @FunctionalInterface
+    interface FaultRowConsumer {
+        void accept(int id, LocalDateTime date, int machineNumber, String fault, String operator, long faultSeconds) throws IOException;
+    }
+
+    // Shift aggregates
+    OverviewResponse getOverviewData(String date, String shift);
+
+    MachineCardResponse getMachineCardData(String machineNumber, String date, String shift);
+
+    Map<String, Object> getDashboardData(String date, String shift);
+
+    Map<String, Object> getTrendData(String from, String to, List<Integer> machines, String granularity, int topFaults);
+
+    Map<String, Object> rebuildRollup(String from, String to);
+
+    // Fault logs
+    FaultLogResponse getFaultLog(String machineNumber, String date, String shift, PageCursor after, int limit);
+
+    FaultReportResponse getFaultReport(String machineNumber, String date, String shift);
+
+    void exportFaults(String from, String to, List<Integer> machines, FaultRowConsumer consumer) throws IOException;
+
+    void insertKnittingFaults(List<KnittingFault> faults);
+
+    void removeFault(Integer ID);
+
+    // Corrective actions
+    void saveCorrectiveActions(String date, Integer machineNumber, Boolean isDayShift, List<Map<String, String>> faultsList);
+
+    Map<String, Object> getCorrectiveAction(String date, Integer machineNumber, Boolean isDayShift, String fault);
+
+    ActionListResponse getActionList(PageCursor after, int limit);
+
+    void completeAction(Integer id, String date);
+
+    // Linear thread
+    Boolean getLinearThread(String date, Integer machineNumber, Boolean isDayShift);
+
+    void setLinearThread(String date, Integer machineNumber, Boolean isDayShift, Boolean isLinearThread);
+
+    // Operators and accountable knitters
+    Map<Integer, String> getOperators();
+
+    Map<Integer, String> checkAccountableKnitter(String date, String shift, List<Integer> machines);
+
+    void SetAccountableKnitter(Integer operator, String date, String shift, List<Integer> machines);
+
+    default void inputWarpingFaultLog(String data) {
+        // TODO
+        System.out.println("Warping Fault Log: " + data);
+    }
+
+    default void inputKnittingProductionLog(String data) {
+        // TODO
+        System.out.println("Knitting Production Log: " + data);
+    }
+
+    default void inputWarpingProductionLog(String data) {
+        // TODO
+        System.out.println("Warping Production Log: " + data);
+    }
+
+    default void inputKnittingWarpRefLog(String data) {
+        // TODO
+        System.out.println("Knitting Warp Ref Log: " + data);
+    }
+}
@@ -0,0 +1,771 @@
+/**
+ *  This class is the FaultStore used when storage.engine is "memory".
+ *   Everything is kept in memory and lost on restart, so the whole API can be run locally and load tested
+ *   without the PostgreSQL database. Responses have the same shape as SQLManager's.
+ *   Faults are indexed by id and, per machine, in date order, so a shift's fault log is a range of one machine's faults.
+ *   The shift rollup is kept per shift as machine -> fault code -> {count, seconds}, updated on every insert and removal
+ *   as fault_rollup is, so the overview, machine cards, reports and trends never scan the faults.
+ *   Fault descriptions and operator names come from the FaultDictionary, seeded from storage.memory.*.
+ *   A single read/write lock guards all of it, reads run in parallel and a write holds out reads only while it updates the maps.
+ *   Timed as faultstore.query like SQLManager, so the two engines can be compared.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@Timed("faultstore.query")
+@ConditionalOnProperty(name = "storage.engine", havingValue = "memory")
+public class InMemoryFaultStore implements FaultStore {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ACTION_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final int EXPORT_CHUNK = 1000;
+
+    private record StoredFault(int id, LocalDateTime date, int machineNumber, int faultCode, int operatorCode, long faultSeconds) {}
+
+    private static final Comparator<StoredFault> BY_DATE = Comparator.comparing(StoredFault::date).thenComparingInt(StoredFault::id);
+    private static final Comparator<PageCursor> ACTION_ORDER = Comparator.comparing(PageCursor::date).thenComparingInt(PageCursor::id);
+
+    private record ActionKey(LocalDate date, int machineNumber, boolean isDayShift, int faultCode) {}
+
+    private static final class CorrectiveAction {
+        final int id;
+        final ActionKey key;
+        final String observation;
+        final String action;
+        boolean completed;
+        LocalDateTime dateCompleted;
+
+        CorrectiveAction(int id, ActionKey key, String observation, String action) {
+            this.id = id;
+            this.key = key;
+            this.observation = observation;
+            this.action = action;
+        }
+    }
+
+    private record LinearThreadKey(LocalDate date, int machineNumber, boolean isDayShift) {}
+
+    private record KnitterKey(LocalDate date, String shift, int machineNumber) {}
+
+    private final ShiftAggregateCache shiftCache;
+    private final ShiftCalendar calendar;
+    private final MachineRegistry registry;
+    private final FaultDictionary dictionary;
+    private final LiveShiftFeed liveFeed;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Visible faults, a removed fault is dropped from both
+    private final Map<Integer, StoredFault> faults = new HashMap<>();
+    private final Map<Integer, NavigableSet<StoredFault>> faultsByMachine = new HashMap<>();
+
+    // Each value is {fault count, downtime seconds}, as a fault_rollup row
+    private final Map<ShiftCalendar.ShiftKey, Map<Integer, Map<Integer, long[]>>> rollup = new HashMap<>();
+
+    private final Map<Integer, CorrectiveAction> actions = new TreeMap<>();
+    private final Map<ActionKey, CorrectiveAction> actionsByKey = new HashMap<>();
+    private final Map<LinearThreadKey, Boolean> linearThreads = new HashMap<>();
+    private final Map<KnitterKey, Integer> accountableKnitters = new HashMap<>();
+
+    private int nextFaultId = 1;
+    private int nextActionId = 1;
+
+    InMemoryFaultStore(ShiftAggregateCache shiftCache, ShiftCalendar calendar, MachineRegistry registry,
+                       FaultDictionary dictionary, LiveShiftFeed liveFeed) {
+        this.shiftCache = shiftCache;
+        this.calendar = calendar;
+        this.registry = registry;
+        this.dictionary = dictionary;
+        this.liveFeed = liveFeed;
+    }
+
+    public OverviewResponse getOverviewData(String date, String shift) {
+        /**
+         * This method returns an overview of data for a given shift, see SQLManager.getOverviewData
+         */
+        double shiftHours = calendar.elapsedHours(LocalDate.parse(date), shift);
+        ShiftCalendar.ShiftKey key = ShiftCalendar.keyOf(date, shift);
+
+        try {
+            ShiftAggregateCache.ShiftTotals totals = shiftCache.getShiftTotals(date, shift,
+                    (machines, faultSeconds, faults) -> loadShiftTotals(key, machines, faultSeconds, faults));
+
+            return OverviewResponse.of(totals, shiftHours);
+        } catch (SQLException e) {
+            // Only the database loader throws
+            e.printStackTrace();
+            return OverviewResponse.ofError(e.toString());
+        }
+    }
+
+    private void loadShiftTotals(ShiftCalendar.ShiftKey key, MachineIndex machines, long[] faultSeconds, int[] faults) {
+        lock.readLock().lock();
+        try {
+            rollup.getOrDefault(key, Map.of()).forEach((machine, byFault) -> {
+                int index = machines.indexOf(machine);
+                if (index >= 0) {
+                    for (long[] totals : byFault.values()) {
+                        faults[index] += (int) totals[0];
+                        faultSeconds[index] += totals[1];
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public MachineCardResponse getMachineCardData(String machineNumber, String date, String shift) {
+        /**
+         * This method returns data for a machine card for a given shift, see SQLManager.getMachineCardData
+         */
+        Map<String, Double> faultDownTime;
+
+        lock.readLock().lock();
+        try {
+            faultDownTime = machineDownTime(ShiftCalendar.keyOf(date, shift), Integer.parseInt(machineNumber));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new MachineCardResponse(machineNumber, faultDownTime,
+                faultDownTime.values().stream().mapToDouble(Double::doubleValue).sum(),
+                calendar.elapsedHours(LocalDate.parse(date), shift), null);
+    }
+
+    private Map<String, Double> machineDownTime(ShiftCalendar.ShiftKey key, int machineNumber) {
+        // Must hold the read lock, downtime in hours per fault description, faults with an unknown code are left out as the join does
+        Map<String, Double> faultDownTime = new HashMap<>();
+        rollup.getOrDefault(key, Map.of()).getOrDefault(machineNumber, Map.of()).forEach((faultCode, totals) -> {
+            String fault = dictionary.getFaultDescription(faultCode);
+            if (fault != null) {
+                faultDownTime.merge(fault, totals[1] / 3600.0, Double::sum);
+            }
+        });
+        return faultDownTime;
+    }
+
+    public Map<String, Object> getDashboardData(String date, String shift) {
+        /**
+         * This method returns everything the floor dashboard shows for a shift in one response, see SQLManager.getDashboardData
+         */
+        Map<String, Object> response = new HashMap<>();
+        double shiftHours = calendar.elapsedHours(LocalDate.parse(date), shift);
+        ShiftCalendar.ShiftKey key = ShiftCalendar.keyOf(date, shift);
+        LocalDate shiftDate = key.date();
+
+        // Per knitting machine, at its index
+        MachineIndex machines = registry.knitting();
+        List<Map<String, Double>> downTimes = new ArrayList<>(machines.size());
+        boolean[] machineLinearThreads = new boolean[machines.size()];
+        String[] machineKnitters = new String[machines.size()];
+
+        lock.readLock().lock();
+        try {
+            for (int index = 0; index < machines.size(); index++) {
+                int machineNumber = machines.numberAt(index);
+                downTimes.add(machineDownTime(key, machineNumber));
+
+                Boolean linearThread = linearThreads.get(new LinearThreadKey(shiftDate, machineNumber, key.shift().equals("day")));
+                machineLinearThreads[index] = linearThread != null && linearThread;
+
+                Integer operator = accountableKnitters.get(new KnitterKey(shiftDate, shift, machineNumber));
+                machineKnitters[index] = operator == null ? null : dictionary.getOperatorName(operator);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        response.put("machines", SQLManager.dashboardOverview(machines, downTimes, shiftHours));
+        response.put("shiftHours", shiftHours);
+        response.put("machineCards", SQLManager.dashboardCards(machines, downTimes, machineLinearThreads, machineKnitters, shiftHours));
+
+        return response;
+    }
+
+    public Map<String, Object> getTrendData(String from, String to, List<Integer> machines, String granularity, int topFaults) {
+        /**
+         * This method returns percent run and the top faults by downtime per machine, for every shift, day or week in a range,
+         * see SQLManager.getTrendData
+         */
+        Map<String, Object> response = new HashMap<>();
+        LocalDate firstDate = LocalDate.parse(from);
+        LocalDate lastDate = LocalDate.parse(to);
+
+        if (lastDate.isBefore(firstDate) || firstDate.plusDays(TREND_MAX_DAYS).isBefore(lastDate)) {
+            response.put("error", "The range must be between 1 and " + TREND_MAX_DAYS + " days");
+            return response;
+        }
+        if (!granularity.equals("shift") && !granularity.equals("day") && !granularity.equals("week")) {
+            response.put("error", "Granularity must be shift, day or week");
+            return response;
+        }
+        if (topFaults < 1) {
+            response.put("error", "topFaults must be at least 1");
+            return response;
+        }
+
+        // The knitting machines unless machines are asked for, totals are kept at each machine's index
+        MachineIndex requested = machines == null || machines.isEmpty() ? registry.knitting() : MachineIndex.of(machines);
+
+        // Hours run in every bucket, and seconds per fault for each machine
+        Map<String, Double> bucketHours = new TreeMap<>();
+        Map<String, List<Map<Integer, Long>>> bucketSeconds = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+                for (String shift : new String[] {"day", "night"}) {
+                    double hours = calendar.hasStarted(date, shift) ? calendar.elapsedHours(date, shift) : 0.0;
+                    String bucket = switch (granularity) {
+                        case "shift" -> date + " " + shift;
+                        case "day" -> date.toString();
+                        default -> date.with(DayOfWeek.MONDAY).toString();
+                    };
+                    bucketHours.merge(bucket, hours, Double::sum);
+
+                    List<Map<Integer, Long>> machineSeconds = bucketSeconds.computeIfAbsent(bucket, b -> {
+                        List<Map<Integer, Long>> seconds = new ArrayList<>(requested.size());
+                        for (int index = 0; index < requested.size(); index++) {
+                            seconds.add(new HashMap<>());
+                        }
+                        return seconds;
+                    });
+                    Map<Integer, Map<Integer, long[]>> shiftRollup = rollup.getOrDefault(new ShiftCalendar.ShiftKey(date, shift), Map.of());
+                    for (int index = 0; index < requested.size(); index++) {
+                        Map<Integer, Long> seconds = machineSeconds.get(index);
+                        shiftRollup.getOrDefault(requested.numberAt(index), Map.of()).forEach((faultCode, totals) ->
+                                seconds.merge(faultCode, totals[1], Long::sum));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Every requested machine appears in every bucket, at 100% when it had no faults
+        Map<String, double[]> bucketDownTime = new HashMap<>();
+        Map<String, List<List<Map<String, Object>>>> bucketTopFaults = new HashMap<>();
+        for (Map.Entry<String, List<Map<Integer, Long>>> entry : bucketSeconds.entrySet()) {
+            double[] downTimes = new double[requested.size()];
+            List<List<Map<String, Object>>> topFaultLists = new ArrayList<>(requested.size());
+
+            for (int index = 0; index < requested.size(); index++) {
+                Map<Integer, Long> seconds = entry.getValue().get(index);
+                downTimes[index] = seconds.values().stream().mapToLong(Long::longValue).sum() / 3600.0;
+
+                List<Map<String, Object>> machineTopFaults = new ArrayList<>();
+                seconds.entrySet().stream()
+                        .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                        .limit(topFaults)
+                        .forEach(fault -> {
+                            Map<String, Object> faultData = new LinkedHashMap<>();
+                            faultData.put("fault", dictionary.getFaultDescription(fault.getKey()));
+                            faultData.put("downTime", fault.getValue() / 3600.0);
+                            machineTopFaults.add(faultData);
+                        });
+                topFaultLists.add(machineTopFaults);
+            }
+
+            bucketDownTime.put(entry.getKey(), downTimes);
+            bucketTopFaults.put(entry.getKey(), topFaultLists);
+        }
+
+        response.put("granularity", granularity);
+        response.put("buckets", SQLManager.trendBuckets(requested, bucketHours, bucketDownTime, bucketTopFaults));
+        return response;
+    }
+
+    public FaultLogResponse getFaultLog(String machineNumber, String date, String shift, PageCursor after, int limit) {
+        /**
+         * This method returns a page of the fault log for a given machine number, date, and shift, see SQLManager.getFaultLog
+         */
+
+        Timestamp[] bounds = calendar.bounds(LocalDate.parse(date), shift);
+        StoredFault start = new StoredFault(Integer.MIN_VALUE, bounds[0].toLocalDateTime(), 0, 0, 0, 0);
+        StoredFault end = new StoredFault(Integer.MIN_VALUE, bounds[1].toLocalDateTime(), 0, 0, 0, 0);
+
+        // Continue after the cursor when it is inside the shift, one fault past the limit is taken to know if there is another page
+        StoredFault from = after == null ? null : new StoredFault(after.id(), after.date(), 0, 0, 0, 0);
+        boolean afterCursor = from != null && BY_DATE.compare(from, start) >= 0;
+
+        List<StoredFault> shiftFaults = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableSet<StoredFault> machineFaults = faultsByMachine.get(Integer.parseInt(machineNumber));
+            if (machineFaults != null) {
+                for (StoredFault fault : afterCursor ? machineFaults.subSet(from, false, end, false) : machineFaults.subSet(start, true, end, false)) {
+                    if (shiftFaults.size() > limit) {
+                        break;
+                    }
+                    shiftFaults.add(fault);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        String nextCursor = null;
+        if (shiftFaults.size() > limit) {
+            shiftFaults = shiftFaults.subList(0, limit);
+            StoredFault last = shiftFaults.get(limit - 1);
+            nextCursor = new PageCursor(last.date(), last.id()).encode();
+        }
+
+        List<FaultLogResponse.Row> faultLog = new ArrayList<>(shiftFaults.size());
+        for (StoredFault fault : shiftFaults) {
+            String description = dictionary.getFaultDescription(fault.faultCode());
+            String operator = dictionary.getOperatorName(fault.operatorCode());
+            if (description == null || operator == null) {
+                continue; // Skip faults with an unknown fault code or operator, as SQLManager does
+            }
+
+            faultLog.add(new FaultLogResponse.Row(fault.id(), fault.date().format(FORMATTER), description,
+                    KnittingFault.formatFaultTime(fault.faultSeconds()), operator));
+        }
+
+        return new FaultLogResponse(machineNumber, faultLog, FaultLogResponse.HEADERS, nextCursor, null);
+    }
+
+    public FaultReportResponse getFaultReport(String machineNumber, String date, String shift) {
+        /**
+         * This method returns a fault report for a given machine number, date, and shift, see SQLManager.getFaultReport
+         */
+        Map<String, long[]> faultTotals = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            rollup.getOrDefault(ShiftCalendar.keyOf(date, shift), Map.of())
+                    .getOrDefault(Integer.parseInt(machineNumber), Map.of())
+                    .forEach((faultCode, totals) -> {
+                        String fault = dictionary.getFaultDescription(faultCode);
+                        if (fault != null) {
+                            long[] faultTotal = faultTotals.computeIfAbsent(fault, f -> new long[2]);
+                            faultTotal[0] += totals[0];
+                            faultTotal[1] += totals[1];
+                        }
+                    });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<String, Double> faultDownTime = new HashMap<>();
+        int totalFaults = 0;
+        for (Map.Entry<String, long[]> entry : faultTotals.entrySet()) {
+            faultDownTime.put(entry.getKey(), FaultLogFile.roundToOneDecimalPlace(entry.getValue()[1] / 3600.0));
+            totalFaults += (int) entry.getValue()[0];
+        }
+
+        double totalDownTime = FaultLogFile.roundToOneDecimalPlace(faultDownTime.values().stream().mapToDouble(Double::doubleValue).sum());
+
+        // In the same order as SQLManager's, most down time first
+        List<String> faultOrder = new ArrayList<>(faultDownTime.keySet());
+        faultOrder.sort(Comparator.comparing((String fault) -> faultDownTime.get(fault)).reversed().thenComparing(Comparator.naturalOrder()));
+
+        List<FaultReportResponse.Row> faultReport = new ArrayList<>(faultOrder.size());
+        for (String fault : faultOrder) {
+            double downTime = faultDownTime.get(fault);
+            double downTimePercentage = (totalDownTime == 0.0) ? 100 : downTime / totalDownTime * 100;
+            int count = (int) faultTotals.get(fault)[0];
+
+            faultReport.add(new FaultReportResponse.Row(fault, count,
+                    FaultLogFile.roundToOneDecimalPlace((double) count / totalFaults * 100), downTime,
+                    FaultLogFile.roundToOneDecimalPlace(downTimePercentage)));
+        }
+
+        return new FaultReportResponse(machineNumber, totalDownTime, faultReport, null);
+    }
+
+    public void exportFaults(String from, String to, List<Integer> machines, FaultRowConsumer consumer) throws IOException {
+        /**
+         * This method hands every fault in a range of shifts to the consumer in date order, see SQLManager.exportFaults
+         * Faults are copied out EXPORT_CHUNK at a time, continuing after the last one handed over, so the lock is never held while the consumer writes
+         */
+        StoredFault last = new StoredFault(Integer.MIN_VALUE, calendar.bounds(LocalDate.parse(from), "day")[0].toLocalDateTime(), 0, 0, 0, 0);
+        StoredFault end = new StoredFault(Integer.MIN_VALUE, calendar.bounds(LocalDate.parse(to), "night")[1].toLocalDateTime(), 0, 0, 0, 0);
+
+        while (true) {
+            // The next chunk from each machine, of which the first EXPORT_CHUNK across all of them come next
+            List<StoredFault> chunk = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (Map.Entry<Integer, NavigableSet<StoredFault>> entry : faultsByMachine.entrySet()) {
+                    if (machines != null && !machines.contains(entry.getKey())) {
+                        continue;
+                    }
+
+                    int taken = 0;
+                    for (StoredFault fault : entry.getValue().subSet(last, false, end, false)) {
+                        if (taken++ == EXPORT_CHUNK) {
+                            break;
+                        }
+                        chunk.add(fault);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            chunk.sort(BY_DATE);
+            if (chunk.size() > EXPORT_CHUNK) {
+                chunk = chunk.subList(0, EXPORT_CHUNK);
+            }
+
+            for (StoredFault fault : chunk) {
+                String description = dictionary.getFaultDescription(fault.faultCode());
+                String operator = dictionary.getOperatorName(fault.operatorCode());
+                if (description == null || operator == null) {
+                    continue; // Skip faults with an unknown fault code or operator, as SQLManager does
+                }
+
+                consumer.accept(fault.id(), fault.date(), fault.machineNumber(), description, operator, fault.faultSeconds());
+            }
+            last = chunk.get(chunk.size() - 1);
+        }
+    }
+
+    public void insertKnittingFaults(List<KnittingFault> faults) {
+        /**
+         * This method inserts a batch of knitting faults, and updates the shift rollup with them
+         *
+         * @param faults: The faults to insert
+         */
+        if (faults.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(faults.size());
+
+        shiftCache.beginWrite();
+        try {
+            lock.writeLock().lock();
+            try {
+                for (KnittingFault fault : faults) {
+                    StoredFault stored = new StoredFault(nextFaultId++, fault.date().toLocalDateTime(), fault.machineNumber(),
+                            fault.faultCode(), fault.operatorCode(), fault.faultSeconds());
+                    this.faults.put(stored.id(), stored);
+                    faultsByMachine.computeIfAbsent(stored.machineNumber(), machine -> new TreeSet<>(BY_DATE)).add(stored);
+                    addToRollup(stored, 1);
+                    ids.add((long) stored.id());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            for (KnittingFault fault : faults) {
+                shiftCache.applyFault(fault.date(), fault.machineNumber(), fault.faultSeconds(), false);
+            }
+            liveFeed.faultsAdded(faults, ids);
+        } finally {
+            shiftCache.endWrite();
+        }
+    }
+
+    public void removeFault(Integer ID) {
+        /**
+         * This method removes a fault, and takes it off the shift rollup
+         *
+         * @param ID: The id of the fault to be removed
+         */
+        shiftCache.beginWrite();
+        try {
+            StoredFault removed;
+            lock.writeLock().lock();
+            try {
+                removed = faults.remove(ID);
+                if (removed != null) {
+                    faultsByMachine.get(removed.machineNumber()).remove(removed);
+                    addToRollup(removed, -1);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (removed != null) {
+                Timestamp date = Timestamp.valueOf(removed.date());
+                shiftCache.applyFault(date, removed.machineNumber(), removed.faultSeconds(), true);
+                liveFeed.faultRemoved(ID, date, removed.machineNumber());
+            }
+        } finally {
+            shiftCache.endWrite();
+        }
+    }
+
+    private void addToRollup(StoredFault fault, int sign) {
+        // Must hold the write lock, rows left with no faults are removed
+        ShiftCalendar.ShiftKey key = calendar.shiftOf(fault.date());
+        Map<Integer, Map<Integer, long[]>> shiftRollup = rollup.computeIfAbsent(key, k -> new HashMap<>());
+        Map<Integer, long[]> machineRollup = shiftRollup.computeIfAbsent(fault.machineNumber(), m -> new HashMap<>());
+        long[] totals = machineRollup.computeIfAbsent(fault.faultCode(), f -> new long[2]);
+
+        totals[0] += sign;
+        totals[1] += sign * fault.faultSeconds();
+
+        if (totals[0] <= 0) {
+            machineRollup.remove(fault.faultCode());
+            if (machineRollup.isEmpty()) {
+                shiftRollup.remove(fault.machineNumber());
+            }
+            if (shiftRollup.isEmpty()) {
+                rollup.remove(key);
+            }
+        }
+    }
+
+    public Map<String, Object> rebuildRollup(String from, String to) {
+        /**
+         * This method rebuilds the shift rollup from the faults for a range of shift dates, see SQLManager.rebuildRollup
+         */
+        Map<String, Object> response = new HashMap<>();
+        LocalDate firstDate = LocalDate.parse(from);
+        LocalDate lastDate = LocalDate.parse(to);
+
+        int shifts = 0;
+        lock.writeLock().lock();
+        try {
+            for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+                for (String shift : new String[] {"day", "night"}) {
+                    rollup.remove(new ShiftCalendar.ShiftKey(date, shift));
+                    shifts++;
+                }
+            }
+
+            // From the start of the first day shift to the end of the last night shift
+            StoredFault start = new StoredFault(Integer.MIN_VALUE, calendar.bounds(firstDate, "day")[0].toLocalDateTime(), 0, 0, 0, 0);
+            StoredFault end = new StoredFault(Integer.MIN_VALUE, calendar.bounds(lastDate, "night")[1].toLocalDateTime(), 0, 0, 0, 0);
+            for (NavigableSet<StoredFault> machineFaults : faultsByMachine.values()) {
+                for (StoredFault fault : machineFaults.subSet(start, true, end, false)) {
+                    addToRollup(fault, 1);
+                }
+            }
+
+            int rows = 0;
+            for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+                for (String shift : new String[] {"day", "night"}) {
+                    for (Map<Integer, long[]> machineRollup : rollup.getOrDefault(new ShiftCalendar.ShiftKey(date, shift), Map.of()).values()) {
+                        rows += machineRollup.size();
+                    }
+                }
+            }
+
+            response.put("shifts", shifts);
+            response.put("rows", rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        shiftCache.invalidateAll();
+
+        return response;
+    }
+
+    public void saveCorrectiveActions(String date, Integer machineNumber, Boolean isDayShift, List<Map<String, String>> faultsList) {
+        /**
+         * This method saves the corrective actions for a given machine number, date, and shift, see SQLManager.saveCorrectiveActions
+         * Any action already saved for the same fault is replaced
+         */
+        LocalDate actionDate = LocalDate.parse(date);
+
+        lock.writeLock().lock();
+        try {
+            for (Map<String, String> fault : faultsList) {
+                Integer faultCode = dictionary.getFaultCode(fault.get("fault"));
+                if (faultCode == null) {
+                    throw new RuntimeException("Fault code not found");
+                }
+
+                ActionKey key = new ActionKey(actionDate, machineNumber, isDayShift, faultCode);
+                CorrectiveAction replaced = actionsByKey.remove(key);
+                if (replaced != null) {
+                    actions.remove(replaced.id);
+                }
+
+                CorrectiveAction action = new CorrectiveAction(nextActionId++, key, fault.get("observation"), fault.get("action"));
+                actions.put(action.id, action);
+                actionsByKey.put(key, action);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getCorrectiveAction(String date, Integer machineNumber, Boolean isDayShift, String fault) {
+        /**
+         * This method is used to get the open corrective action for a fault on a given machine number, date, and shift
+         */
+        Map<String, Object> response = new HashMap<>();
+
+        Integer faultCode = dictionary.getFaultCode(fault);
+        if (faultCode == null) {
+            response.put("error", "Fault code not found");
+            return response;
+        }
+
+        lock.readLock().lock();
+        try {
+            CorrectiveAction action = actionsByKey.get(new ActionKey(LocalDate.parse(date), machineNumber, isDayShift, faultCode));
+            if (action == null || action.completed) {
+                response.put("error", "No data found");
+                return response;
+            }
+
+            response.put("observation", action.observation);
+            response.put("action", action.action);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return response;
+    }
+
+    public ActionListResponse getActionList(PageCursor after, int limit) {
+        /**
+         * This method returns a page of the corrective actions that have not been completed, see SQLManager.getActionList
+         */
+        List<CorrectiveAction> page;
+
+        lock.readLock().lock();
+        try {
+            page = actions.values().stream()
+                    .filter(action -> !action.completed)
+                    .filter(action -> after == null || ACTION_ORDER.compare(cursorOf(action), after) > 0)
+                    .sorted(Comparator.comparing(InMemoryFaultStore::cursorOf, ACTION_ORDER))
+                    .limit(limit + 1L)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        String nextCursor = null;
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            nextCursor = cursorOf(page.get(limit - 1)).encode();
+        }
+
+        List<ActionListResponse.Action> actionList = new ArrayList<>(page.size());
+        for (CorrectiveAction action : page) {
+            actionList.add(new ActionListResponse.Action(action.id, action.key.date().format(ACTION_DATE_FORMATTER),
+                    action.key.machineNumber(), action.key.isDayShift(), action.key.faultCode(), action.observation, action.action));
+        }
+
+        return new ActionListResponse(actionList, nextCursor, null);
+    }
+
+    private static PageCursor cursorOf(CorrectiveAction action) {
+        // Actions are stored by shift date, so they page as if saved at midnight
+        return new PageCursor(action.key.date().atStartOfDay(), action.id);
+    }
+
+    public void completeAction(Integer id, String date) {
+        LocalDateTime dateCompleted = Timestamp.valueOf(date).toLocalDateTime();
+
+        lock.writeLock().lock();
+        try {
+            CorrectiveAction action = actions.get(id);
+            if (action != null) {
+                action.completed = true;
+                action.dateCompleted = dateCompleted;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Boolean getLinearThread(String date, Integer machineNumber, Boolean isDayShift) {
+        lock.readLock().lock();
+        try {
+            return linearThreads.getOrDefault(new LinearThreadKey(LocalDate.parse(date), machineNumber, isDayShift), false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setLinearThread(String date, Integer machineNumber, Boolean isDayShift, Boolean isLinearThread) {
+        lock.writeLock().lock();
+        try {
+            linearThreads.put(new LinearThreadKey(LocalDate.parse(date), machineNumber, isDayShift), isLinearThread);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<Integer, String> getOperators() {
+        /**
+         * This method returns a list of operators
+         */
+        return new HashMap<>(dictionary.getOperators());
+    }
+
+    public Map<Integer, String> checkAccountableKnitter(String date, String shift, List<Integer> machines) {
+        /**
+         * This method checks if an accountable knitter is assigned to a machine for a given date and shift,
+         * see SQLManager.checkAccountableKnitter
+         */
+        Map<Integer, String> knitters = new HashMap<>();
+        LocalDate knitterDate = LocalDate.parse(date);
+
+        lock.readLock().lock();
+        try {
+            for (Integer machine : machines) {
+                Integer operator = accountableKnitters.get(new KnitterKey(knitterDate, shift, machine));
+                String name = operator == null ? null : dictionary.getOperatorName(operator);
+                if (name != null) {
+                    knitters.put(machine, name);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (knitters.isEmpty()) {
+            knitters.put(-1, "Unassigned");
+        }
+
+        return knitters;
+    }
+
+    public void SetAccountableKnitter(Integer operator, String date, String shift, List<Integer> machines) {
+        /**
+         * This method sets the accountable knitter for a given operator, date, shift, and list of machines
+         * If there is already an accountable knitter assigned to a machine, it will be replaced
+         */
+        LocalDate knitterDate = LocalDate.parse(date);
+
+        lock.writeLock().lock();
+        try {
+            for (Integer machine : machines) {
+                accountableKnitters.put(new KnitterKey(knitterDate, shift, machine), operator);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
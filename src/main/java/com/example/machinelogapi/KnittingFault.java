@@ -0,0 +1,64 @@
+/**
+ *  A single knitting fault as sent by the machines.
+ *   The raw line is in the format "dd/MM/yyyy hh:mm:ss;fault_code;fault_description;operator_code;operator_name;fault_time;machine_number"
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+public record KnittingFault(Timestamp date, int faultCode, int operatorCode, String faultTime, long faultSeconds, int machineNumber) {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    public static KnittingFault parse(String data) {
+        /**
+         * This method parses a raw fault line into a KnittingFault
+         *
+         * @param data: The fault line
+         *            Example: "25/08/2021 06:31:12;4;Standing;12;J Smith;00:03:20;3"
+         *
+         * @throws IllegalArgumentException if the line is not in the expected format
+         */
+        String[] parts = data.split(";");
+        if (parts.length < 7) {
+            throw new IllegalArgumentException("Expected 7 fields but found " + parts.length + ": " + data);
+        }
+
+        // Parse the string to a LocalDateTime object and convert it to a Timestamp
+        LocalDateTime localDateTime;
+        try {
+            localDateTime = LocalDateTime.parse(parts[0].trim(), FORMATTER);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + parts[0], e);
+        }
+
+        String faultTime = parts[5].trim();
+
+        return new KnittingFault(
+                Timestamp.valueOf(localDateTime),
+                Integer.parseInt(parts[1].trim()),
+                Integer.parseInt(parts[3].trim()),
+                faultTime,
+                parseFaultSeconds(faultTime),
+                Integer.parseInt(parts[6].trim()));
+    }
+
+    static String formatFaultTime(long seconds) {
+        // "hh:mm:ss", hours carry on past 24 rather than becoming days as Postgres prints a long interval
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    private static long parseFaultSeconds(String faultTime) {
+        // The fault time is in the format "hh:mm:ss"
+        String[] parts = faultTime.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid fault time: " + faultTime);
+        }
+
+        return Long.parseLong(parts[0]) * 3600 + Long.parseLong(parts[1]) * 60 + Long.parseLong(parts[2]);
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *  This class pushes changes to a shift's faults to dashboards over Server-Sent Events.
+ *   The FaultStore publishes after every committed insert or removal, and only shifts with subscribers are published to.
+ *   Each subscriber has its own bounded buffer and its own virtual thread sending from it, so a slow client
+ *   only ever delays itself. When a buffer overflows it is emptied and the client is told to resync,
+ *   which it does by reloading the overview and fault logs.
+ *
+ *   Events:
+ *   - "fault-added": { "machineNumber": 3, "fault": { "ID", "Date", "Fault", "Fault Time", "Operator" }, "percentRun": 93.1 }
+ *   - "fault-removed": { "machineNumber": 3, "ID": 1234, "percentRun": 95.4 }
+ *   - "resync": {}
+ *   "percentRun" is left out when the shift's totals are not cached.
+ */
+
+package com.example.machinelogapi;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@Component
+public class LiveShiftFeed {
+
+    private record Event(String name, Supplier<Map<String, Object>> data) {}
+
+    private final class Subscriber {
+        final ShiftCalendar.ShiftKey shift;
+        final SseEmitter emitter;
+        final BlockingQueue<Event> events = new ArrayBlockingQueue<>(bufferSize);
+        volatile boolean open = true;
+
+        Subscriber(ShiftCalendar.ShiftKey shift, SseEmitter emitter) {
+            this.shift = shift;
+            this.emitter = emitter;
+        }
+
+        void offer(Event event) {
+            if (!events.offer(event)) {
+                // Too far behind to catch up from deltas, drop them and have the client reload instead
+                events.clear();
+                events.offer(new Event("resync", Map::of));
+            }
+        }
+    }
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ShiftAggregateCache shiftCache;
+    private final ShiftCalendar calendar;
+    private final FaultDictionary dictionary;
+    private final int bufferSize;
+    private final long emitterTimeoutMs;
+    private final long heartbeatMs;
+
+    private final Map<ShiftCalendar.ShiftKey, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    LiveShiftFeed(ShiftAggregateCache shiftCache, ShiftCalendar calendar, FaultDictionary dictionary,
+                  @Value("${live.subscriberBuffer:256}") int bufferSize,
+                  @Value("${live.emitterTimeoutMs:1800000}") long emitterTimeoutMs,
+                  @Value("${live.heartbeatMs:15000}") long heartbeatMs) {
+        this.shiftCache = shiftCache;
+        this.calendar = calendar;
+        this.dictionary = dictionary;
+        this.bufferSize = bufferSize;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    public SseEmitter subscribe(String date, String shift) {
+        /**
+         * This method opens a stream of changes to the faults in a shift
+         *
+         * @param date: The date in the format "yyyy-MM-dd"
+         * @param shift: The shift in the format "day" or "night"
+         */
+        ShiftCalendar.ShiftKey key = ShiftCalendar.keyOf(date, shift);
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(key, emitter);
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        subscribers.computeIfAbsent(key, k -> new CopyOnWriteArraySet<>()).add(subscriber);
+        Thread.ofVirtual().name("live-" + key.date() + "-" + key.shift()).start(() -> send(subscriber));
+
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    void faultsAdded(List<KnittingFault> faults, List<Long> ids) {
+        /**
+         * Called by the FaultStore once inserted faults have been committed
+         */
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < faults.size(); i++) {
+            KnittingFault fault = faults.get(i);
+            long id = i < ids.size() ? ids.get(i) : -1;
+            ShiftCalendar.ShiftKey key = calendar.shiftOf(fault.date().toLocalDateTime());
+
+            publish(key, new Event("fault-added", () -> {
+                Map<String, Object> data = new HashMap<>();
+                data.put("machineNumber", fault.machineNumber());
+                // The same row as the fault log, so clients can append it as it is
+                data.put("fault", new FaultLogResponse.Row(id, fault.date().toLocalDateTime().format(FORMATTER),
+                        dictionary.getFaultDescription(fault.faultCode()), KnittingFault.formatFaultTime(fault.faultSeconds()),
+                        dictionary.getOperatorName(fault.operatorCode())));
+                putPercentRun(data, key, fault.machineNumber());
+                return data;
+            }));
+        }
+    }
+
+    void faultRemoved(int id, Timestamp date, int machineNumber) {
+        /**
+         * Called by the FaultStore once a removal has been committed
+         */
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        ShiftCalendar.ShiftKey key = calendar.shiftOf(date.toLocalDateTime());
+        publish(key, new Event("fault-removed", () -> {
+            Map<String, Object> data = new HashMap<>();
+            data.put("machineNumber", machineNumber);
+            data.put("ID", id);
+            putPercentRun(data, key, machineNumber);
+            return data;
+        }));
+    }
+
+    private void publish(ShiftCalendar.ShiftKey key, Event event) {
+        Set<Subscriber> shiftSubscribers = subscribers.get(key);
+        if (shiftSubscribers == null) {
+            return;
+        }
+
+        for (Subscriber subscriber : shiftSubscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private void putPercentRun(Map<String, Object> data, ShiftCalendar.ShiftKey key, int machineNumber) {
+        // Only from the cache, a dashboard push is never worth a database round-trip
+        ShiftAggregateCache.ShiftTotals totals = shiftCache.peekShiftTotals(key);
+        if (totals == null) {
+            return;
+        }
+
+        double shiftSeconds = calendar.elapsedHours(key.date(), key.shift()) * 3600;
+        long machineSeconds = totals.faultSecondsOf(machineNumber);
+        data.put("percentRun", (shiftSeconds - machineSeconds) / shiftSeconds * 100.0);
+    }
+
+    private void send(Subscriber subscriber) {
+        try {
+            while (subscriber.open) {
+                Event event = subscriber.events.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    // Keeps proxies from closing an idle stream, and finds clients that have gone away
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                    continue;
+                }
+                subscriber.emitter.send(SseEmitter.event().name(event.name()).data(event.data().get()));
+            }
+        } catch (IOException | IllegalStateException e) {
+            subscriber.emitter.completeWithError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            subscriber.emitter.complete();
+        } finally {
+            unsubscribe(subscriber);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscriber.open = false;
+        subscribers.computeIfPresent(subscriber.shift, (key, shiftSubscribers) -> {
+            shiftSubscribers.remove(subscriber);
+            return shiftSubscribers.isEmpty() ? null : shiftSubscribers;
+        });
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ *  The downtime of one machine in a shift, in hours per fault.
+ */
+
+package com.example.machinelogapi;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MachineCardResponse(String machineNumber, Map<String, Double> downTime, Double totalDownTime, Double shiftHours, String error) {
+
+    public static MachineCardResponse ofError(String error) {
+        return new MachineCardResponse(null, null, null, null, error);
+    }
+}
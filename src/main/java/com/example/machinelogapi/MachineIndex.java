@@ -0,0 +1,59 @@
+/**
+ *  A set of machine numbers in ascending order, each with a dense index from 0 to size() - 1.
+ *   Per machine totals are kept in primitive arrays at those indexes instead of in maps keyed by machine number.
+ *   The numbers never change once built, so an array filled against one MachineIndex is always read back against the same one.
+ */
+
+package com.example.machinelogapi;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+public final class MachineIndex {
+
+    static final MachineIndex EMPTY = new MachineIndex(new int[0]);
+
+    private final int[] numbers;
+
+    private MachineIndex(int[] numbers) {
+        this.numbers = numbers;
+    }
+
+    static MachineIndex of(int[] machineNumbers) {
+        return new MachineIndex(Arrays.stream(machineNumbers).sorted().distinct().toArray());
+    }
+
+    static MachineIndex of(Collection<Integer> machineNumbers) {
+        return new MachineIndex(machineNumbers.stream().mapToInt(Integer::intValue).sorted().distinct().toArray());
+    }
+
+    public int size() {
+        return numbers.length;
+    }
+
+    public int indexOf(int machineNumber) {
+        /**
+         * This method returns the index of a machine, or -1 if the machine isn't in the set
+         */
+        int index = Arrays.binarySearch(numbers, machineNumber);
+        return index < 0 ? -1 : index;
+    }
+
+    public int numberAt(int index) {
+        return numbers[index];
+    }
+
+    public int[] numbers() {
+        return numbers.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MachineIndex other && Arrays.equals(numbers, other.numbers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(numbers);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ *  This class keeps the machines table in memory: every machine on the floor, its type, its site and whether it is active.
+ *   The active knitting machines are the floor the overview, dashboard and trends report on, served as a MachineIndex
+ *   so per machine totals can be kept in arrays.
+ *   The table is loaded at startup, reloaded periodically so machines added straight into the database are picked up,
+ *   and reloaded at once when a machine is saved through the API. Listeners are told whenever the knitting machines change.
+ *   Until the table has been read, and with no database when storage.engine is "memory", the machines come from storage.memory.machines.
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MachineRegistry {
+
+    public record Machine(int machineNumber, String type, String site, boolean active) {}
+
+    private record Snapshot(List<Machine> machines, MachineIndex knitting) {}
+
+    private final ConnectionPool pool;
+    private final Map<Integer, Machine> seedMachines = new TreeMap<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Replaced as a whole on every reload, so readers never see a half loaded registry
+    private volatile Snapshot snapshot;
+
+    MachineRegistry(Optional<ConnectionPool> pool, @Value("${storage.memory.machines:}") String seedMachines) {
+        this.pool = pool.orElse(null);
+        for (Machine machine : parseSeed(seedMachines)) {
+            this.seedMachines.put(machine.machineNumber(), machine);
+        }
+        snapshot = snapshotOf(new ArrayList<>(this.seedMachines.values()));
+    }
+
+    @PostConstruct
+    void load() {
+        try {
+            refresh();
+        } catch (SQLException e) {
+            // Retried by the scheduled refresh, the seed machines are served until then
+            e.printStackTrace();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${machines.refreshMs:60000}", initialDelayString = "${machines.refreshMs:60000}")
+    void scheduledRefresh() {
+        load();
+    }
+
+    public synchronized void refresh() throws SQLException {
+        List<Machine> machines = new ArrayList<>();
+
+        if (pool == null) {
+            machines.addAll(seedMachines.values());
+        } else {
+            try (Connection con = pool.getConnection();
+                 PreparedStatement pstmt = con.prepareStatement("SELECT machine_number, type, site, active FROM machines ORDER BY machine_number;");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    machines.add(new Machine(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getBoolean(4)));
+                }
+            }
+        }
+
+        Snapshot previous = snapshot;
+        snapshot = snapshotOf(machines);
+
+        if (!snapshot.knitting().equals(previous.knitting())) {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+
+    public List<Machine> getMachines() {
+        return snapshot.machines();
+    }
+
+    public MachineIndex knitting() {
+        /**
+         * This method returns the active knitting machines, the machines the floor is reported on
+         */
+        return snapshot.knitting();
+    }
+
+    public Map<String, Object> save(Machine machine) {
+        /**
+         * This method adds a machine or changes an existing one, and reloads the registry
+         *
+         * @param machine: The machine, its type is "knitting" or "warping"
+         *
+         * @return A map containing the following keys:
+         *         - "machine": The machine as saved
+         *         - "error": An error message if an error occurred
+         */
+        Map<String, Object> response = new HashMap<>();
+        if (!machine.type().equals("knitting") && !machine.type().equals("warping")) {
+            response.put("error", "Type must be knitting or warping");
+            return response;
+        }
+
+        try {
+            if (pool == null) {
+                synchronized (this) {
+                    seedMachines.put(machine.machineNumber(), machine);
+                }
+            } else {
+                try (Connection con = pool.getConnection()) {
+                    String sql = "INSERT INTO machines (machine_number, type, site, active) VALUES (?, ?, ?, ?) " +
+                            "ON CONFLICT (machine_number) DO UPDATE SET type = EXCLUDED.type, site = EXCLUDED.site, active = EXCLUDED.active;";
+                    try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                        pstmt.setInt(1, machine.machineNumber());
+                        pstmt.setString(2, machine.type());
+                        pstmt.setString(3, machine.site());
+                        pstmt.setBoolean(4, machine.active());
+                        pstmt.executeUpdate();
+                    }
+                }
+            }
+
+            refresh();
+            response.put("machine", machine);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            response.put("error", "Failed to connect to the database");
+        }
+
+        return response;
+    }
+
+    void addListener(Runnable listener) {
+        /**
+         * This method registers a listener to run after every reload that changes the knitting machines
+         */
+        listeners.add(listener);
+    }
+
+    private static Snapshot snapshotOf(List<Machine> machines) {
+        List<Integer> knitting = new ArrayList<>();
+        for (Machine machine : machines) {
+            if (machine.active() && machine.type().equals("knitting")) {
+                knitting.add(machine.machineNumber());
+            }
+        }
+        return new Snapshot(List.copyOf(machines), MachineIndex.of(knitting));
+    }
+
+    private static List<Machine> parseSeed(String seed) {
+        // "number:type:site" separated by commas, Example: "1:knitting:Long Eaton,2:warping:Long Eaton"
+        List<Machine> machines = new ArrayList<>();
+        for (String entry : seed.split(",")) {
+            String[] fields = entry.split(":", 3);
+            if (fields.length == 3) {
+                machines.add(new Machine(Integer.parseInt(fields[0].trim()), fields[1].trim(), fields[2].trim(), true));
+            }
+        }
+        return machines;
+    }
+}
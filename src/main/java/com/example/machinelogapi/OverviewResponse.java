@@ -0,0 +1,39 @@
+/**
+ *  The overview of a shift: the machines that have faults in it and the percentage of the shift each has run for.
+ */
+
+package com.example.machinelogapi;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OverviewResponse(Machines machines, String error) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Machines(int[] numbers, double[] percentRun) {}
+
+    static OverviewResponse of(ShiftAggregateCache.ShiftTotals totals, double shiftHours) {
+        // Only the machines that have faults in the shift are listed
+        int faulted = 0;
+        for (int faults : totals.faults()) {
+            faulted += faults > 0 ? 1 : 0;
+        }
+
+        int[] numbers = new int[faulted];
+        double[] percentRun = new double[faulted];
+        int next = 0;
+        for (int index = 0; index < totals.machines().size(); index++) {
+            if (totals.faults()[index] > 0) {
+                numbers[next] = totals.machines().numberAt(index);
+                percentRun[next] = ((shiftHours * 3600 - totals.faultSeconds()[index]) / (shiftHours * 3600)) * 100.0;
+                next++;
+            }
+        }
+
+        return new OverviewResponse(new Machines(numbers, percentRun), null);
+    }
+
+    public static OverviewResponse ofError(String error) {
+        return new OverviewResponse(null, error);
+    }
+}
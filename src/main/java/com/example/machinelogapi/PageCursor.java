@@ -0,0 +1,43 @@
+/**
+ *  The position to continue a paged list from: the date and id of the last row of the previous page.
+ *   Lists are ordered by (date, id), so rows inserted while a client is paging never shift the rows after the cursor.
+ *   Clients get it as an opaque token, "nextCursor" in a response, and send it back unchanged as "cursor".
+ */
+
+package com.example.machinelogapi;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+public record PageCursor(LocalDateTime date, int id) {
+
+    public String encode() {
+        String position = date + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageCursor decode(String token) {
+        /**
+         * This method reads a cursor back from its token
+         *
+         * @param token: A token from encode, or null for the first page
+         *
+         * @return The cursor, or null for the first page
+         *
+         * @throws IllegalArgumentException if the token was not made by encode
+         */
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf('|');
+            return new PageCursor(LocalDateTime.parse(position.substring(0, separator)), Integer.parseInt(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -2,55 +2,74 @@
  *  This class is what interacts with the PostgreSQL database.
  *   It contains methods to get data from the database and return it to the DataService class.
  *   The methods in this class are annotated with @Component to make it a Spring bean.
- *   Username and password are loaded from a properties file.
+ *   Connections are borrowed from the ConnectionPool rather than opened per query.
+ *   It is the FaultStore used unless storage.engine is set to something other than "jdbc".
+ *   Every public method is timed as faultstore.query, tagged with the method name.
+ *   A failed query is also counted as faultstore.query.errors, tagged with the method and the SQLState class,
+ *   as most methods return an error response rather than throw and are timed as if they had succeeded.
  */
 
 package com.example.machinelogapi;
 
-import java.io.*;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.IOException;
+import java.io.Reader;
 import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import com.example.machinelogapi.config.AsyncConfig;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 
 @Component
-public class SQLManager {
-    String dbURL = "jdbc:postgresql://10.0.0.85:5432/fault_log";
-
-    String username;
-    String password;
-
-    SQLManager() {
-
-        try {
-            // Load username and password from properties file
-            Properties props = new Properties();
-            props.load(new FileInputStream("config.properties"));
-            username = props.getProperty("psql.username");
-            password = props.getProperty("psql.password");
-
-            // Load PostgreSQL driver
-            Class.forName("org.postgresql.Driver");
-
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    public int[] getMachineNumbers() {
-        return new int[] {1, 2, 3, 17, 19, 26, 27, 28};
+@Timed("faultstore.query")
+@ConditionalOnProperty(name = "storage.engine", havingValue = "jdbc", matchIfMissing = true)
+public class SQLManager implements FaultStore {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ACTION_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final Logger log = LoggerFactory.getLogger(SQLManager.class);
+
+    private final ConnectionPool pool;
+    private final ShiftAggregateCache shiftCache;
+    private final ShiftCalendar calendar;
+    private final MachineRegistry registry;
+    private final FaultDictionary dictionary;
+    private final LiveShiftFeed liveFeed;
+    private final int exportFetchSize;
+    private final boolean rebuildRollupWhenEmpty;
+    private final MeterRegistry meterRegistry;
+
+    SQLManager(ConnectionPool pool, ShiftAggregateCache shiftCache, ShiftCalendar calendar, MachineRegistry registry,
+               FaultDictionary dictionary, LiveShiftFeed liveFeed, MeterRegistry meterRegistry,
+               @Value("${export.fetchSize:1000}") int exportFetchSize,
+               @Value("${rollup.rebuildWhenEmpty:true}") boolean rebuildRollupWhenEmpty) {
+        this.pool = pool;
+        this.shiftCache = shiftCache;
+        this.calendar = calendar;
+        this.registry = registry;
+        this.dictionary = dictionary;
+        this.liveFeed = liveFeed;
+        this.exportFetchSize = exportFetchSize;
+        this.rebuildRollupWhenEmpty = rebuildRollupWhenEmpty;
+        this.meterRegistry = meterRegistry;
     }
 
-    public Map<String, Object> getOverviewData(String date, String shift) {
+    public OverviewResponse getOverviewData(String date, String shift) {
         /**
          * This method returns an overview of data for a given shift
          *
@@ -67,89 +86,44 @@ public class SQLManager {
          *         Example: { "error": "Failed to connect to the database" }
          *
          */
-        Timestamp start;
-        Timestamp end;
-        double shiftHours;
+        // Up to now if we are currently in the shift
+        double shiftHours = calendar.elapsedHours(LocalDate.parse(date), shift);
 
-        // Day shift starts at 00:06:00 and ends at 17:30:00
-        // Night shift starts at 17:30:00 and ends at 00:06:00 the next day
-        if (shift.equals("day")) {
-            start = Timestamp.valueOf(date + " 06:00:00");
-            end = Timestamp.valueOf(date + " 17:30:00");
-            shiftHours = 11.5;
-        } else {
-            start = Timestamp.valueOf(date + " 17:30:00");
-            end = Timestamp.valueOf(LocalDateTime.parse(date + " 06:00:00", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")).plusDays(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            shiftHours = 12.5;
-        }
+        try {
+            // Served from the cache once the shift has been read, the cache is kept current by inserts and removals
+            ShiftAggregateCache.ShiftTotals totals = shiftCache.getShiftTotals(date, shift,
+                    (machines, faultSeconds, faults) -> loadShiftTotals(date, shift, machines, faultSeconds, faults));
 
-        // If we are currently in the shift, the shift hours should be calculated up to the current time
-        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-        if (now.after(start) && now.before(end)) {
-            shiftHours = (now.getTime() - start.getTime()) / 3600000.0;
+            return OverviewResponse.of(totals, shiftHours);
+        } catch (SQLException e) {
+            failed("getOverviewData", e);
+            e.printStackTrace();
+            return OverviewResponse.ofError("Failed to connect to the database");
         }
+    }
 
-        Map<String, Object> response = new HashMap<>();
-        Map<Integer, Double> machinePercentRun = new HashMap<>();
-        int totalMachines = 0; // To count total machines for average calculation
-
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "SELECT machine_number, SUM(fault_time) FROM faults WHERE date >= ?::timestamp AND date < ?::timestamp AND visible = TRUE GROUP BY machine_number";
+    private void loadShiftTotals(String date, String shift, MachineIndex machines, long[] faultSeconds, int[] faults) throws SQLException {
+        try (Connection con = pool.getConnection()) {
+            String sql = "SELECT machine_number, SUM(downtime_seconds), SUM(fault_count) FROM fault_rollup WHERE shift_date = ? AND shift = ? GROUP BY machine_number";
 
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-                pstmt.setTimestamp(1, start);
-                pstmt.setTimestamp(2, end);
+                pstmt.setDate(1, java.sql.Date.valueOf(date));
+                pstmt.setString(2, ShiftCalendar.shiftName(shift));
 
                 try (ResultSet rs = pstmt.executeQuery()) {
                     while (rs.next()) {
-                        int machineNumber = rs.getInt(1);
-                        String faultTimeString = rs.getString(2);
-
-                        // Parse fault time string into hours, minutes, seconds
-                        String[] parts = faultTimeString.split(":");
-                        int hours = Integer.parseInt(parts[0]);
-                        int minutes = Integer.parseInt(parts[1]);
-                        int seconds = Integer.parseInt(parts[2]);
-
-                        // Calculate total fault time in seconds
-                        long faultTimeSeconds = hours * 3600 + minutes * 60 + seconds;
-
-                        // Calculate percent running time
-                        double percentRunning = ((shiftHours * 3600 - faultTimeSeconds) / (shiftHours * 3600)) * 100.0;
-                        machinePercentRun.put(machineNumber, percentRunning);
-
-                        totalMachines++;
+                        int index = machines.indexOf(rs.getInt(1));
+                        if (index >= 0) {
+                            faultSeconds[index] = rs.getLong(2);
+                            faults[index] = rs.getInt(3);
+                        }
                     }
                 }
-
-                // Construct response map
-                int[] machineNumbers = new int[totalMachines];
-                double[] percentRun = new double[totalMachines];
-                int index = 0;
-                for (Map.Entry<Integer, Double> entry : machinePercentRun.entrySet()) {
-                    machineNumbers[index] = entry.getKey();
-                    percentRun[index] = entry.getValue();
-                    index++;
-                }
-
-                Map<String, Object> machinesMap = new HashMap<>();
-                machinesMap.put("numbers", machineNumbers);
-                machinesMap.put("percentRun", percentRun);
-
-                response.put("machines", machinesMap);
-            } catch (SQLException e) {
-                response.put("error", "Failed to execute query");
-                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            response.put("error", "Failed to connect to the database");
-            e.printStackTrace();
         }
-
-        return response;
     }
 
-    public Map<String, Object> getMachineCardData(String machineNumber, String date, String shift) {
+    public MachineCardResponse getMachineCardData(String machineNumber, String date, String shift) {
         /**
          * This method returns data for a machine card for a given shift
          *
@@ -168,85 +142,341 @@ public class SQLManager {
          *        - "totalDownTime": The total downtime for the machine
          *        - "error": An error message if an error occurred
          */
-        Map<String, Object> response = new HashMap<>();
         Map<String, Double> faultDownTime = new HashMap<>();
 
-        Timestamp start;
-        Timestamp end;
-        double shiftHours;
-
-        if (shift.equals("day")) {
-            start = Timestamp.valueOf(date + " 06:00:00");
-            end = Timestamp.valueOf(date + " 17:30:00");
-            shiftHours = 11.5;
-        } else {
-            start = Timestamp.valueOf(date + " 17:30:00");
-            end = Timestamp.valueOf(LocalDateTime.parse(date + " 06:00:00", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")).plusDays(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            shiftHours = 12.5;
-        }
-
-        // If we are currently in the shift, the shift hours should be calculated up to the current time
-        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-        if (now.after(start) && now.before(end)) {
-            shiftHours = (now.getTime() - start.getTime()) / 3600000.0;
-        }
+        // Up to now if we are currently in the shift
+        double shiftHours = calendar.elapsedHours(LocalDate.parse(date), shift);
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+        try (Connection con = pool.getConnection()) {
+            // Totals per fault come from the rollup, which is kept up to date by every insert and removal
             String sql = "SELECT\n" +
                     "    fc.code AS fault_code,\n" +
                     "    fc.description AS fault_description,\n" +
-                    "    SUM(f.fault_time) AS total_fault_time\n" +
+                    "    SUM(r.downtime_seconds) AS total_fault_seconds\n" +
                     "FROM\n" +
-                    "    faults f\n" +
-                    "JOIN\n" +
-                    "    fault_codes fc ON f.fault_code = fc.code\n" +
+                    "    fault_rollup r\n" +
                     "JOIN\n" +
-                    "    operators o ON f.operator_code = o.code\n" +
+                    "    fault_codes fc ON r.fault_code = fc.code\n" +
                     "WHERE\n" +
-                    "    f.machine_number = ?\n" +
-                    "    AND date >= ?::timestamp AND date < ?::timestamp\n" +
-                    "AND visible = TRUE GROUP BY\n" +
+                    "    r.machine_number = ?\n" +
+                    "    AND r.shift_date = ? AND r.shift = ?\n" +
+                    "GROUP BY\n" +
                     "    fc.code, fc.description;";
 
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-                pstmt.setTimestamp(2, start);
-                pstmt.setTimestamp(3, end);
                 pstmt.setInt(1, Integer.parseInt(machineNumber));
+                pstmt.setDate(2, java.sql.Date.valueOf(date));
+                pstmt.setString(3, ShiftCalendar.shiftName(shift));
 
                 try (ResultSet rs = pstmt.executeQuery()) {
                     double totalFaultTime = 0;
                     while (rs.next()) {
 
                         String fault = rs.getString(2);
-                        String faultTimeString = rs.getString(3); // Assuming SUM(fault_time) returns hh:mm:ss
-                        String parts[] = faultTimeString.split(":");
-                        long hours = Integer.parseInt(parts[0]);
-                        long minutes = Integer.parseInt(parts[1]);
-                        long seconds = Integer.parseInt(parts[2]);
 
-                        // Calculate total fault time in seconds
-                        double faultTimeHours = hours + (double) minutes / 60 + (double) seconds / 3600;
+                        // Calculate total fault time in hours
+                        double faultTimeHours = rs.getLong(3) / 3600.0;
 
                         faultDownTime.put(fault, faultTimeHours);
                         totalFaultTime += faultTimeHours;
                     }
 
-                    response.put("machineNumber", machineNumber);
-                    response.put("downTime", faultDownTime);
-                    response.put("totalDownTime", totalFaultTime);
-                    response.put("shiftHours", shiftHours);
+                    return new MachineCardResponse(machineNumber, faultDownTime, totalFaultTime, shiftHours, null);
+                }
+            }
 
+        } catch (SQLException e) {
+            failed("getMachineCardData", e);
+            e.printStackTrace();
+            return MachineCardResponse.ofError("Failed to connect to the database");
+        }
+    }
+
+    public Map<String, Object> getDashboardData(String date, String shift) {
+        /**
+         * This method returns everything the floor dashboard shows for a shift in one response,
+         * instead of the overview plus one machine card request per machine
+         *
+         * @param date: The date in the format "yyyy-MM-dd"
+         *            Example: "2021-08-25"
+         *
+         * @param shift: The shift in the format "day" or "night"
+         *             Example: "day"
+         *
+         * @return A map containing the following keys:
+         *         - "machines": The same as the overview
+         *         - "shiftHours": The hours the shift has run for
+         *         - "machineCards": A map of machine number to its card, every card containing
+         *           "machineNumber", "downTime", "totalDownTime" and "shiftHours" as in the machine card,
+         *           plus "linearThread" and "accountableKnitter" ("Unassigned" if nobody is assigned)
+         *         - "error": An error message if an error occurred
+         */
+        Map<String, Object> response = new HashMap<>();
+        double shiftHours = calendar.elapsedHours(LocalDate.parse(date), shift);
+        String rollupShift = ShiftCalendar.shiftName(shift);
+        Timestamp dateTimestamp = Timestamp.valueOf(date + " 00:00:00");
+
+        // Per knitting machine, at its index
+        MachineIndex machines = registry.knitting();
+        List<Map<String, Double>> downTimes = new ArrayList<>(machines.size());
+        boolean[] linearThreads = new boolean[machines.size()];
+        String[] accountableKnitters = new String[machines.size()];
+
+        for (int index = 0; index < machines.size(); index++) {
+            downTimes.add(new HashMap<>());
+        }
+
+        try (Connection con = pool.getConnection()) {
+            // Downtime per machine and fault for the whole floor in one grouped query
+            String downTimeSql = "SELECT machine_number, fault_code, SUM(downtime_seconds) FROM fault_rollup WHERE shift_date = ? AND shift = ? GROUP BY machine_number, fault_code;";
+            try (PreparedStatement pstmt = con.prepareStatement(downTimeSql)) {
+                pstmt.setDate(1, java.sql.Date.valueOf(date));
+                pstmt.setString(2, rollupShift);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int index = machines.indexOf(rs.getInt(1));
+                        String fault = dictionary.getFaultDescription(rs.getInt(2));
+                        if (index < 0 || fault == null) {
+                            continue;
+                        }
+                        downTimes.get(index).merge(fault, rs.getLong(3) / 3600.0, Double::sum);
+                    }
+                }
+            }
+
+            String linearThreadSql = "SELECT machine_number, islinearthread FROM linear_thread WHERE date = ?::timestamp AND isdayshift = ?;";
+            try (PreparedStatement pstmt = con.prepareStatement(linearThreadSql)) {
+                pstmt.setTimestamp(1, dateTimestamp);
+                pstmt.setBoolean(2, rollupShift.equals("day"));
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int index = machines.indexOf(rs.getInt(1));
+                        if (index >= 0) {
+                            linearThreads[index] = rs.getBoolean(2);
+                        }
+                    }
                 }
             }
 
+            String knitterSql = "SELECT machine_number, operator FROM accountable_knitter WHERE date = ?::timestamp AND shift = ?;";
+            try (PreparedStatement pstmt = con.prepareStatement(knitterSql)) {
+                pstmt.setTimestamp(1, dateTimestamp);
+                pstmt.setString(2, shift);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int index = machines.indexOf(rs.getInt(1));
+                        String name = dictionary.getOperatorName(rs.getInt(2));
+                        if (index >= 0 && name != null) {
+                            accountableKnitters[index] = name;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            failed("getDashboardData", e);
+            response.put("error", "Failed to connect to the database");
+            e.printStackTrace();
+            return response;
+        }
+
+        response.put("machines", dashboardOverview(machines, downTimes, shiftHours));
+        response.put("shiftHours", shiftHours);
+        response.put("machineCards", dashboardCards(machines, downTimes, linearThreads, accountableKnitters, shiftHours));
+
+        return response;
+    }
+
+    static OverviewResponse.Machines dashboardOverview(MachineIndex machines, List<Map<String, Double>> downTimes, double shiftHours) {
+        // The overview only lists machines that have faults in the shift
+        int[] faulted = new int[machines.size()];
+        double[] percentRun = new double[machines.size()];
+        int count = 0;
+        for (int index = 0; index < machines.size(); index++) {
+            if (!downTimes.get(index).isEmpty()) {
+                double totalDownTime = downTimes.get(index).values().stream().mapToDouble(Double::doubleValue).sum();
+                faulted[count] = machines.numberAt(index);
+                percentRun[count] = (shiftHours - totalDownTime) / shiftHours * 100.0;
+                count++;
+            }
+        }
+        return new OverviewResponse.Machines(Arrays.copyOf(faulted, count), Arrays.copyOf(percentRun, count));
+    }
+
+    static Map<Integer, Object> dashboardCards(MachineIndex machines, List<Map<String, Double>> downTimes, boolean[] linearThreads,
+                                               String[] accountableKnitters, double shiftHours) {
+        // A card for every knitting machine, in machine number order
+        Map<Integer, Object> machineCards = new LinkedHashMap<>();
+        for (int index = 0; index < machines.size(); index++) {
+            Map<String, Object> card = HashMap.newHashMap(6);
+            card.put("machineNumber", String.valueOf(machines.numberAt(index)));
+            card.put("downTime", downTimes.get(index));
+            card.put("totalDownTime", downTimes.get(index).values().stream().mapToDouble(Double::doubleValue).sum());
+            card.put("shiftHours", shiftHours);
+            card.put("linearThread", linearThreads[index]);
+            card.put("accountableKnitter", accountableKnitters[index] == null ? "Unassigned" : accountableKnitters[index]);
+            machineCards.put(machines.numberAt(index), card);
+        }
+        return machineCards;
+    }
+
+    public Map<String, Object> getTrendData(String from, String to, List<Integer> machines, String granularity, int topFaults) {
+        /**
+         * This method returns percent run and the top faults by downtime per machine, for every shift, day or week in a range
+         * It is answered with one grouped query over the rollup, however long the range
+         *
+         * @param from: The first shift date in the format "yyyy-MM-dd"
+         *            Example: "2021-08-01"
+         *
+         * @param to: The last shift date in the format "yyyy-MM-dd"
+         *          Example: "2021-08-31"
+         *
+         * @param machines: The machine numbers, or null for every machine
+         *                Example: [1, 2, 3]
+         *
+         * @param granularity: "shift", "day" or "week"
+         *
+         * @param topFaults: The number of faults to list per machine and bucket, at least 1
+         *
+         * @return A map containing the following keys:
+         *         - "granularity": The granularity of the buckets
+         *         - "buckets": A list of buckets in order, each with its "bucket" label, "shiftHours" and "machines",
+         *           a map of machine number to its "percentRun", "downTime" in hours and "topFaults"
+         *           Example: [ { "bucket": "2021-08-02", "shiftHours": 24.0, "machines": { "3": { "percentRun": 97.3, "downTime": 0.65, "topFaults": [ { "fault": "Standing", "downTime": 0.4 } ] } } } ]
+         *         - "error": An error message if an error occurred
+         */
+        Map<String, Object> response = new HashMap<>();
+        LocalDate firstDate = LocalDate.parse(from);
+        LocalDate lastDate = LocalDate.parse(to);
+
+        if (lastDate.isBefore(firstDate) || firstDate.plusDays(TREND_MAX_DAYS).isBefore(lastDate)) {
+            response.put("error", "The range must be between 1 and " + TREND_MAX_DAYS + " days");
+            return response;
+        }
+
+        String bucketExpression;
+        switch (granularity) {
+            case "shift" -> bucketExpression = "shift_date::text || ' ' || shift";
+            case "day" -> bucketExpression = "shift_date::text";
+            case "week" -> bucketExpression = "date_trunc('week', shift_date)::date::text";
+            default -> {
+                response.put("error", "Granularity must be shift, day or week");
+                return response;
+            }
+        }
+
+        // The downtime totals come from the ranked rows, every machine with faults has at least the first of them
+        if (topFaults < 1) {
+            response.put("error", "topFaults must be at least 1");
+            return response;
+        }
+
+        // The knitting machines unless machines are asked for, totals are kept at each machine's index
+        MachineIndex requested = machines == null || machines.isEmpty() ? registry.knitting() : MachineIndex.of(machines);
+
+        // Hours run in every bucket, only counting shifts that have started and only up to now for the live one
+        Map<String, Double> bucketHours = new TreeMap<>();
+        for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+            for (String shift : new String[] {"day", "night"}) {
+                double hours = calendar.hasStarted(date, shift) ? calendar.elapsedHours(date, shift) : 0.0;
+                String bucket = switch (granularity) {
+                    case "shift" -> date + " " + shift;
+                    case "day" -> date.toString();
+                    default -> date.with(DayOfWeek.MONDAY).toString();
+                };
+                bucketHours.merge(bucket, hours, Double::sum);
+            }
+        }
+
+        // Every requested machine appears in every bucket, at 100% when it had no faults
+        Map<String, List<List<Map<String, Object>>>> bucketTopFaults = new HashMap<>();
+        Map<String, double[]> bucketDownTime = new HashMap<>();
+        for (String bucket : bucketHours.keySet()) {
+            List<List<Map<String, Object>>> topFaultLists = new ArrayList<>(requested.size());
+            for (int index = 0; index < requested.size(); index++) {
+                topFaultLists.add(new ArrayList<>());
+            }
+            bucketTopFaults.put(bucket, topFaultLists);
+            bucketDownTime.put(bucket, new double[requested.size()]);
+        }
+
+        try (Connection con = pool.getConnection()) {
+            String sql = "WITH buckets AS (" +
+                    "    SELECT " + bucketExpression + " AS bucket, machine_number, fault_code, SUM(downtime_seconds) AS seconds" +
+                    "    FROM fault_rollup WHERE shift_date >= ? AND shift_date <= ? AND machine_number = ANY(?)" +
+                    "    GROUP BY 1, machine_number, fault_code" +
+                    "), ranked AS (" +
+                    "    SELECT bucket, machine_number, fault_code, seconds," +
+                    "        SUM(seconds) OVER (PARTITION BY bucket, machine_number) AS total_seconds," +
+                    "        ROW_NUMBER() OVER (PARTITION BY bucket, machine_number ORDER BY seconds DESC, fault_code) AS fault_rank" +
+                    "    FROM buckets" +
+                    ") " +
+                    "SELECT bucket, machine_number, fault_code, seconds, total_seconds FROM ranked WHERE fault_rank <= ? ORDER BY bucket, machine_number, fault_rank;";
+
+            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                pstmt.setDate(1, java.sql.Date.valueOf(firstDate));
+                pstmt.setDate(2, java.sql.Date.valueOf(lastDate));
+                pstmt.setArray(3, con.createArrayOf("integer", Arrays.stream(requested.numbers()).boxed().toArray()));
+                pstmt.setInt(4, topFaults);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String bucket = rs.getString(1);
+                        int index = requested.indexOf(rs.getInt(2));
+                        if (index < 0 || !bucketTopFaults.containsKey(bucket)) {
+                            continue;
+                        }
+
+                        bucketDownTime.get(bucket)[index] = rs.getLong(5) / 3600.0;
+
+                        Map<String, Object> fault = new LinkedHashMap<>();
+                        fault.put("fault", dictionary.getFaultDescription(rs.getInt(3)));
+                        fault.put("downTime", rs.getLong(4) / 3600.0);
+                        bucketTopFaults.get(bucket).get(index).add(fault);
+                    }
+                }
+            }
         } catch (SQLException e) {
+            failed("getTrendData", e);
             response.put("error", "Failed to connect to the database");
             e.printStackTrace();
+            return response;
         }
+
+        response.put("granularity", granularity);
+        response.put("buckets", trendBuckets(requested, bucketHours, bucketDownTime, bucketTopFaults));
         return response;
     }
 
-    public Map<String, Object> getFaultLog(String machineNumber, String date, String shift) {
+    static List<Map<String, Object>> trendBuckets(MachineIndex machines, Map<String, Double> bucketHours, Map<String, double[]> bucketDownTime,
+                                                  Map<String, List<List<Map<String, Object>>>> bucketTopFaults) {
+        // The buckets in order, each with its machines in machine number order
+        List<Map<String, Object>> bucketList = new ArrayList<>(bucketHours.size());
+        for (Map.Entry<String, Double> entry : bucketHours.entrySet()) {
+            double hours = entry.getValue();
+            double[] downTimes = bucketDownTime.get(entry.getKey());
+
+            Map<Integer, Map<String, Object>> bucketMachines = new LinkedHashMap<>();
+            for (int index = 0; index < machines.size(); index++) {
+                Map<String, Object> machineData = HashMap.newHashMap(3);
+                machineData.put("topFaults", bucketTopFaults.get(entry.getKey()).get(index));
+                machineData.put("downTime", downTimes[index]);
+                machineData.put("percentRun", hours == 0.0 ? 100.0 : (hours - downTimes[index]) / hours * 100.0);
+                bucketMachines.put(machines.numberAt(index), machineData);
+            }
+
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("bucket", entry.getKey());
+            bucket.put("shiftHours", hours);
+            bucket.put("machines", bucketMachines);
+            bucketList.add(bucket);
+        }
+        return bucketList;
+    }
+
+    public FaultLogResponse getFaultLog(String machineNumber, String date, String shift, PageCursor after, int limit) {
         /**
          * This method returns the fault log for a given machine number, date, and shift
          * Almost exactly how it is displayed in the database
@@ -260,76 +490,132 @@ public class SQLManager {
          * @param shift: The shift in the format "day" or "night"
          *             Example: "day"
          *
+         * @param after: The cursor of the last fault of the previous page, or null for the first page
+         *
+         * @param limit: The most faults to return
+         *
          * @return A map containing the following
          *       - "machineNumber": The machine number
          *       - "faultLog": A list of maps containing the fault log data
          *       - "headers": An array of headers for the fault log
+         *       - "nextCursor": The cursor for the next page, if there is one
          *       - "error": An error message if an error occurred
          */
-        Map<String, Object> response = new HashMap<>();
-        List<Map<String, Object>> faultLog = new ArrayList<>();
-
-        Timestamp start;
-        Timestamp end;
+        List<FaultLogResponse.Row> faultLog = new ArrayList<>();
 
-        if (shift.equals("day")) {
-            start = Timestamp.valueOf(date + " 06:00:00");
-            end = Timestamp.valueOf(date + " 17:30:00");
-        } else {
-            start = Timestamp.valueOf(date + " 17:30:00");
-            end = Timestamp.valueOf(LocalDateTime.parse(date + " 06:00:00", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")).plusDays(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-        }
+        Timestamp[] bounds = calendar.bounds(LocalDate.parse(date), shift);
+        Timestamp start = bounds[0];
+        Timestamp end = bounds[1];
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "SELECT id, date, fc.description AS Fault, o.name AS Operator, fault_time FROM faults f JOIN fault_codes fc ON f.fault_code = fc.code JOIN operators o ON f.operator_code = o.code WHERE machine_number = ? AND date >= ?::timestamp AND date < ?::timestamp AND visible = TRUE ORDER BY date;";
+        try (Connection con = pool.getConnection()) {
+            // Fault descriptions and operator names are resolved from the dictionary instead of joined
+            // Pages continue from the cursor by (date, id), one row past the limit is read to know if there is another page
+            String sql = "SELECT id, date, fault_code, operator_code, EXTRACT(EPOCH FROM fault_time)::bigint FROM faults WHERE machine_number = ? AND date >= ?::timestamp AND date < ?::timestamp AND visible = TRUE" +
+                    (after == null ? "" : " AND (date, id) > (?, ?)") +
+                    " ORDER BY date, id LIMIT ?;";
 
 
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-                pstmt.setInt(1, Integer.parseInt(machineNumber));
-                pstmt.setTimestamp(2, start);
-                pstmt.setTimestamp(3, end);
+                int index = 1;
+                pstmt.setInt(index++, Integer.parseInt(machineNumber));
+                pstmt.setTimestamp(index++, start);
+                pstmt.setTimestamp(index++, end);
+                if (after != null) {
+                    pstmt.setTimestamp(index++, Timestamp.valueOf(after.date()));
+                    pstmt.setInt(index++, after.id());
+                }
+                pstmt.setInt(index, limit + 1);
 
                 try (ResultSet rs = pstmt.executeQuery()) {
+                    PageCursor last = null;
+                    int rows = 0;
                     while (rs.next()) {
+                        if (++rows > limit) {
+                            return new FaultLogResponse(machineNumber, faultLog, FaultLogResponse.HEADERS, last.encode(), null);
+                        }
 
                         int id = rs.getInt(1);
                         LocalDateTime localDateTime = rs.getTimestamp(2).toLocalDateTime();
-                        // Define the formatter
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                        // Format the LocalDateTime to string
-                        String formattedDateTime = localDateTime.format(formatter);
+                        last = new PageCursor(localDateTime, id);
+
+                        String fault = dictionary.getFaultDescription(rs.getInt(3));
+                        String operator = dictionary.getOperatorName(rs.getInt(4));
+                        if (fault == null || operator == null) {
+                            continue; // Skip faults with an unknown fault code or operator, as the join did
+                        }
 
-                        Map<String, Object> faultData = new HashMap<>();
-                        faultData.put("ID", id);
-                        faultData.put("Date", formattedDateTime);
-                        faultData.put("Fault", rs.getString(3));
-                        faultData.put("Fault Time", rs.getString(5));
-                        faultData.put("Operator", rs.getString(4));
+                        // Format the LocalDateTime to string
+                        String formattedDateTime = localDateTime.format(FORMATTER);
 
-                        faultLog.add(faultData);
+                        faultLog.add(new FaultLogResponse.Row(id, formattedDateTime, fault, KnittingFault.formatFaultTime(rs.getLong(5)), operator));
                     }
 
-                    String[] headers = {"Date", "Fault", "Fault Time", "Operator"};
-
-                    response.put("machineNumber", machineNumber);
-                    response.put("faultLog", faultLog);
-                    response.put("headers", headers);
+                    return new FaultLogResponse(machineNumber, faultLog, FaultLogResponse.HEADERS, null, null);
                 }
             }
 
         } catch (SQLException e) {
-            response.put("error", "Failed to connect to the database");
+            failed("getFaultLog", e);
             e.printStackTrace();
+            return FaultLogResponse.ofError("Failed to connect to the database");
         }
+    }
 
-        if (response.isEmpty()) {
-            response.put("error", "No data found");
-        }
+    public void exportFaults(String from, String to, List<Integer> machines, FaultRowConsumer consumer) throws IOException {
+        /**
+         * This method reads every fault in a range of shifts, in date order, and hands each to the consumer as it is read
+         * The rows come from a server side cursor, export.fetchSize at a time, so however long the range only one fetch is held in memory
+         *
+         * @param from: The first shift date in the format "yyyy-MM-dd", from its day shift
+         *            Example: "2021-08-01"
+         *
+         * @param to: The last shift date in the format "yyyy-MM-dd", up to the end of its night shift
+         *            Example: "2021-08-31"
+         *
+         * @param machines: The machine numbers to export, or null for every machine
+         *
+         * @param consumer: Receives each fault, an IOException from it stops the export and closes the cursor
+         */
+        String sql = "SELECT id, date, machine_number, fault_code, operator_code, EXTRACT(EPOCH FROM fault_time)::bigint FROM faults" +
+                " WHERE date >= ? AND date < ? AND visible = TRUE" +
+                (machines == null ? "" : " AND machine_number = ANY(?)") +
+                " ORDER BY date, id;";
+
+        try (Connection con = pool.getConnection()) {
+            // The driver only fetches in batches through a cursor inside a transaction, otherwise it reads the whole result first
+            con.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(exportFetchSize);
+                pstmt.setTimestamp(1, calendar.bounds(LocalDate.parse(from), "day")[0]);
+                pstmt.setTimestamp(2, calendar.bounds(LocalDate.parse(to), "night")[1]);
+                if (machines != null) {
+                    pstmt.setArray(3, con.createArrayOf("integer", machines.toArray()));
+                }
 
-        return response;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String fault = dictionary.getFaultDescription(rs.getInt(4));
+                        String operator = dictionary.getOperatorName(rs.getInt(5));
+                        if (fault == null || operator == null) {
+                            continue; // Skip faults with an unknown fault code or operator, as the fault log does
+                        }
+
+                        consumer.accept(rs.getInt(1), rs.getTimestamp(2).toLocalDateTime(), rs.getInt(3), fault, operator, rs.getLong(6));
+                    }
+                }
+            } finally {
+                // Nothing was written, ends the transaction and closes the cursor if the consumer stopped part way
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            failed("exportFaults", e);
+            throw new RuntimeException(e);
+        }
     }
 
-    public Map<String, Object> getFaultReport(String machineNumber, String date, String shift) {
+    public FaultReportResponse getFaultReport(String machineNumber, String date, String shift) {
         /**
          * This method returns a fault report for a given machine number, date, and shift
          *
@@ -345,95 +631,47 @@ public class SQLManager {
          * @return A map containing the following
          *        - "machineNumber": The machine number
          *        - "totalDownTime": The total down time for the machine
-         *        - "faultReport": A list of maps containing the fault report data
+         *        - "faultReport": A list of maps containing the fault report data, most down time first
          *           Example: [ { "Fault": "Fault 1", "Number of Faults": 2, "percentage / count": 50.0, "Fault Down Time": 1.5, "percentage / time": 50.0 } ]
          *        - "error": An error message if an error occurred
          */
-        Map<String, Object> response = new HashMap<>();
-        Map<String, Double> faultDownTime = new HashMap<>();
-        Map<String, Double> faultTimePercentage = new HashMap<>();
-        Map<String, Integer> faultCount = new HashMap<>();
-        Map<String, Double> faultCountPercentage = new HashMap<>();
-        int totalFaults = 0;
-
-        Timestamp start;
-        Timestamp end;
-
-        if (shift.equals("day")) {
-            start = Timestamp.valueOf(date + " 06:00:00");
-            end = Timestamp.valueOf(date + " 17:30:00");
-        } else {
-            start = Timestamp.valueOf(date + " 17:30:00");
-            end = Timestamp.valueOf(LocalDateTime.parse(date + " 06:00:00", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")).plusDays(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-        }
-
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "SELECT fc.description AS Fault, SUM(f.fault_time) AS Fault_Down_Time, COUNT(f.fault_code) AS Fault_Count FROM faults f JOIN fault_codes fc ON f.fault_code = fc.code WHERE machine_number = ? AND date >= ?::timestamp AND date < ?::timestamp AND visible = TRUE GROUP BY fc.description;";
+        try (Connection con = pool.getConnection()) {
+            // Hours are rounded to 1.d.p per fault before the totals and percentages are taken from them, as the report has always shown
+            String sql = "WITH faults AS (" +
+                    "    SELECT fc.description AS fault, SUM(r.fault_count) AS fault_count, ROUND(SUM(r.downtime_seconds) / 3600.0, 1) AS down_hours" +
+                    "    FROM fault_rollup r JOIN fault_codes fc ON r.fault_code = fc.code" +
+                    "    WHERE r.machine_number = ? AND r.shift_date = ? AND r.shift = ?" +
+                    "    GROUP BY fc.description" +
+                    ") " +
+                    "SELECT fault, fault_count, down_hours," +
+                    "    ROUND(100.0 * fault_count / SUM(fault_count) OVER (), 1) AS count_percentage," +
+                    "    CASE WHEN SUM(down_hours) OVER () = 0 THEN 100.0 ELSE ROUND(100.0 * down_hours / SUM(down_hours) OVER (), 1) END AS time_percentage," +
+                    "    SUM(down_hours) OVER () AS total_down_hours " +
+                    "FROM faults ORDER BY down_hours DESC, fault;";
 
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
                 pstmt.setInt(1, Integer.parseInt(machineNumber));
-                pstmt.setTimestamp(2, start);
-                pstmt.setTimestamp(3, end);
+                pstmt.setDate(2, java.sql.Date.valueOf(date));
+                pstmt.setString(3, ShiftCalendar.shiftName(shift));
 
                 try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        String fault = rs.getString(1);
-                        String faultTimeString = rs.getString(2); // Assuming SUM(fault_time) returns hh:mm:ss
-                        String parts[] = faultTimeString.split(":");
-                        long hours = Integer.parseInt(parts[0]);
-                        long minutes = Integer.parseInt(parts[1]);
-                        long seconds = Integer.parseInt(parts[2]);
-
-                        // Calculate total fault time in hours, rounded to 1.d.p
-                        double faultHours = roundToOneDecimalPlace(hours + (double) minutes / 60 + (double) seconds / 3600);
-
-                        faultDownTime.put(fault, faultDownTime.getOrDefault(fault, 0.0) + faultHours);
-                        faultCount.put(fault, rs.getInt(3));
-                        totalFaults += rs.getInt(3);
-                    }
-
-                    double totalDownTime = faultDownTime.values().stream().mapToDouble(Double::doubleValue).sum();
-
-                    for (Map.Entry<String, Double> entry : faultDownTime.entrySet()) {
-                        String fault = entry.getKey();
-                        double downTime = entry.getValue();
-                        double downTimePercentage = (totalDownTime == 0.0) ? 100 : downTime / totalDownTime * 100;
-                        downTimePercentage = roundToOneDecimalPlace(downTimePercentage);
-                        faultTimePercentage.put(fault, downTimePercentage);
+                    List<FaultReportResponse.Row> faultReport = new ArrayList<>();
+                    double totalDownTime = 0.0;
 
-                        double count = faultCount.get(fault);
-                        double countPercentage = count / totalFaults * 100;
-                        countPercentage = roundToOneDecimalPlace(countPercentage);
-                        faultCountPercentage.put(fault, countPercentage);
-                    }
-
-                    List<Map<String, Object>> faultReport = new ArrayList<>();
-                    for (String fault : faultDownTime.keySet()) {
-                        Map<String, Object> faultRow = new LinkedHashMap<>();
-                        faultRow.put("Fault", fault);
-                        faultRow.put("Number of Faults", faultCount.get(fault));
-                        faultRow.put("percentage / count", faultCountPercentage.get(fault));
-                        faultRow.put("Fault Down Time", faultDownTime.get(fault));
-                        faultRow.put("percentage / time", faultTimePercentage.get(fault));
-                        faultReport.add(faultRow);
+                    while (rs.next()) {
+                        faultReport.add(new FaultReportResponse.Row(rs.getString(1), rs.getInt(2), rs.getDouble(4), rs.getDouble(3), rs.getDouble(5)));
+                        totalDownTime = rs.getDouble(6);
                     }
 
-                    response.put("machineNumber", machineNumber);
-                    response.put("totalDownTime", totalDownTime);
-                    response.put("faultReport", faultReport);
+                    return new FaultReportResponse(machineNumber, totalDownTime, faultReport, null);
                 }
             }
 
         } catch (SQLException e) {
-            response.put("error", "Failed to connect to the database");
+            failed("getFaultReport", e);
             e.printStackTrace();
+            return FaultReportResponse.ofError("Failed to connect to the database");
         }
-
-        if (response.isEmpty()) {
-            response.put("error", "No data found");
-        }
-
-        return response;
     }
 
     public void saveCorrectiveActions(String date, Integer machineNumber, Boolean isDayShift, List<Map<String, String>> faultsList) {
@@ -456,42 +694,41 @@ public class SQLManager {
          *                  Example: [ { "fault": "Standing", "observation": "asgfdas", "action": "asdgasdfg" }, { "fault": "False Stop", "observation": "asdgf", "action": "asdg" } ]
          */
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+        Timestamp dateTimestamp = Timestamp.valueOf(date + " 00:00:00");
+
+        try (Connection con = pool.getConnection()) {
             String sql = "INSERT INTO corrective_actions (date, machine_number, isdayshift, fault_code, observation, action) VALUES (?::timestamp, ?, ?, ?, ?, ?);";
 
             //delete any conflicting data
             String deleteSql = "DELETE FROM corrective_actions WHERE date = ?::timestamp AND machine_number = ? AND isdayshift = ? AND fault_code = ?;";
 
-            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+            try (PreparedStatement pstmt = con.prepareStatement(sql);
+                 PreparedStatement pstmt2 = con.prepareStatement(deleteSql)) {
                 for (Map<String, String> fault : faultsList) {
-                    String getFaultCode = "SELECT code FROM fault_codes WHERE description = ?;";
-                    try (PreparedStatement pstmt2 = con.prepareStatement(getFaultCode)) {
-                        pstmt2.setString(1, fault.get("fault"));
-                        try (ResultSet rs = pstmt2.executeQuery()) {
-                            if (!rs.next()) {
-                                throw new RuntimeException("Fault code not found");
-                            }
-                            try (PreparedStatement pstmt3 = con.prepareStatement(deleteSql)) {
-                                pstmt3.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
-                                pstmt3.setInt(2, machineNumber);
-                                pstmt3.setBoolean(3, isDayShift);
-                                pstmt3.setInt(4, rs.getInt(1));
-                                pstmt3.executeUpdate();
-                            }
-                            pstmt.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
-                            pstmt.setInt(2, machineNumber);
-                            pstmt.setBoolean(3, isDayShift);
-                            pstmt.setInt(4, rs.getInt(1));
-                            pstmt.setString(5, fault.get("observation"));
-                            pstmt.setString(6, fault.get("action"));
-
-                            pstmt.executeUpdate();
-                        }
+                    Integer faultCode = dictionary.getFaultCode(fault.get("fault"));
+                    if (faultCode == null) {
+                        throw new RuntimeException("Fault code not found");
                     }
+
+                    pstmt2.setTimestamp(1, dateTimestamp);
+                    pstmt2.setInt(2, machineNumber);
+                    pstmt2.setBoolean(3, isDayShift);
+                    pstmt2.setInt(4, faultCode);
+                    pstmt2.executeUpdate();
+
+                    pstmt.setTimestamp(1, dateTimestamp);
+                    pstmt.setInt(2, machineNumber);
+                    pstmt.setBoolean(3, isDayShift);
+                    pstmt.setInt(4, faultCode);
+                    pstmt.setString(5, fault.get("observation"));
+                    pstmt.setString(6, fault.get("action"));
+
+                    pstmt.executeUpdate();
                 }
             }
 
         } catch (SQLException e) {
+            failed("saveCorrectiveActions", e);
             throw new RuntimeException(e);
         }
 
@@ -509,37 +746,33 @@ public class SQLManager {
 
         Map<String, Object> response = new HashMap<>();
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+        Integer faultCode = dictionary.getFaultCode(fault);
+        if (faultCode == null) {
+            response.put("error", "Fault code not found");
+            return response;
+        }
+
+        try (Connection con = pool.getConnection()) {
             String sql = "SELECT observation, action FROM corrective_actions WHERE date = ?::timestamp AND machine_number = ? AND isdayshift = ? AND fault_code = ? AND completed = FALSE;";
-            String getFaultCode = "SELECT code FROM fault_codes WHERE description = ?;";
 
-            try (PreparedStatement pstmt = con.prepareStatement(getFaultCode)) {
-                pstmt.setString(1, fault);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (!rs.next()) {
-                        response.put("error", "Fault code not found");
+            try (PreparedStatement pstmt2 = con.prepareStatement(sql)) {
+                pstmt2.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
+                pstmt2.setInt(2, machineNumber);
+                pstmt2.setBoolean(3, isDayShift);
+                pstmt2.setInt(4, faultCode);
+
+                try (ResultSet rs2 = pstmt2.executeQuery()) {
+                    if (!rs2.next()) {
+                        response.put("error", "No data found");
                         return response;
                     }
-                    int faultCode = rs.getInt(1);
-                    try (PreparedStatement pstmt2 = con.prepareStatement(sql)) {
-                        pstmt2.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
-                        pstmt2.setInt(2, machineNumber);
-                        pstmt2.setBoolean(3, isDayShift);
-                        pstmt2.setInt(4, faultCode);
-
-                        try (ResultSet rs2 = pstmt2.executeQuery()) {
-                            if (!rs2.next()) {
-                                response.put("error", "No data found");
-                                return response;
-                            }
-
-                            response.put("observation", rs2.getString(1));
-                            response.put("action", rs2.getString(2));
-                        }
-                    }
+
+                    response.put("observation", rs2.getString(1));
+                    response.put("action", rs2.getString(2));
                 }
             }
         } catch (SQLException e) {
+            failed("getCorrectiveAction", e);
             response.put("error", "Failed to connect to the database");
         }
 
@@ -556,7 +789,7 @@ public class SQLManager {
          * Example URL:
          */
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+        try (Connection con = pool.getConnection()) {
             String sql = "SELECT islinearthread FROM linear_thread WHERE date = ?::timestamp AND machine_number = ? AND isdayshift = ?;";
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
                 pstmt.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
@@ -572,6 +805,7 @@ public class SQLManager {
                 }
             }
         } catch (SQLException e) {
+            failed("getLinearThread", e);
             throw new RuntimeException(e);
         }
     }
@@ -586,17 +820,10 @@ public class SQLManager {
          * Example URL:
          */
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-
-            String deleteSql = "DELETE FROM linear_thread WHERE date = ?::timestamp AND machine_number = ? AND isdayshift = ?;";
-            try (PreparedStatement pstmt = con.prepareStatement(deleteSql)) {
-                pstmt.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
-                pstmt.setInt(2, machineNumber);
-                pstmt.setBoolean(3, isDayShift);
-                pstmt.executeUpdate();
-            }
-
-            String sql = "INSERT INTO linear_thread (date, machine_number, isdayshift, islinearthread) VALUES (?::timestamp, ?, ?, ?);";
+        try (Connection con = pool.getConnection()) {
+            // One status per machine and shift, replaced in place
+            String sql = "INSERT INTO linear_thread (date, machine_number, isdayshift, islinearthread) VALUES (?::timestamp, ?, ?, ?) " +
+                    "ON CONFLICT (date, machine_number, isdayshift) DO UPDATE SET islinearthread = EXCLUDED.islinearthread;";
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
                 pstmt.setTimestamp(1, Timestamp.valueOf(date + " 00:00:00"));
                 pstmt.setInt(2, machineNumber);
@@ -606,53 +833,70 @@ public class SQLManager {
                 pstmt.executeUpdate();
             }
         } catch (SQLException e) {
+            failed("setLinearThread", e);
             throw new RuntimeException(e);
         }
 
     }
 
-    public Map<String, Object> getActionList() {
-        Map<String, Object> response = new HashMap<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-
-        String sql = "SELECT * FROM corrective_actions WHERE completed = FALSE ORDER BY date ASC;";
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+    public ActionListResponse getActionList(PageCursor after, int limit) {
+        /**
+         * This method returns a page of the corrective actions that have not been completed, oldest first
+         *
+         * @param after: The cursor of the last action of the previous page, or null for the first page
+         *
+         * @param limit: The most actions to return
+         *
+         * @return A map containing the following
+         *        - "actionList": A list of maps containing the actions
+         *        - "nextCursor": The cursor for the next page, if there is one
+         *        - "error": An error message if an error occurred
+         */
+        String sql = "SELECT id, date, machine_number, isdayshift, fault_code, observation, action FROM corrective_actions WHERE completed = FALSE" +
+                (after == null ? "" : " AND (date, id) > (?, ?)") +
+                " ORDER BY date, id LIMIT ?;";
+        try (Connection con = pool.getConnection()) {
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                int index = 1;
+                if (after != null) {
+                    pstmt.setTimestamp(index++, Timestamp.valueOf(after.date()));
+                    pstmt.setInt(index++, after.id());
+                }
+                pstmt.setInt(index, limit + 1);
+
                 try (ResultSet rs = pstmt.executeQuery()) {
-                    List<Map<String, Object>> actionList = new ArrayList<>();
+                    List<ActionListResponse.Action> actionList = new ArrayList<>();
+                    PageCursor last = null;
                     while (rs.next()) {
+                        if (actionList.size() == limit) {
+                            return new ActionListResponse(actionList, last.encode(), null);
+                        }
+
                         LocalDateTime localDateTime = rs.getTimestamp(2).toLocalDateTime();
-                        String formattedDateTime = localDateTime.format(formatter);
-                        Map<String, Object> action = new HashMap<>();
-                        action.put("id", rs.getInt(1));
-                        action.put("date", formattedDateTime);
-                        action.put("machine_number", rs.getInt(3));
-                        action.put("isdayshift", rs.getBoolean(4));
-                        action.put("fault_code", rs.getInt(5));
-                        action.put("observation", rs.getString(6));
-                        action.put("action", rs.getString(7));
-                        actionList.add(action);
+                        last = new PageCursor(localDateTime, rs.getInt(1));
+                        actionList.add(new ActionListResponse.Action(rs.getInt(1), localDateTime.format(ACTION_DATE_FORMATTER), rs.getInt(3),
+                                rs.getBoolean(4), rs.getInt(5), rs.getString(6), rs.getString(7)));
                     }
 
-                    response.put("actionList", actionList);
+                    return new ActionListResponse(actionList, null, null);
                 }
             }
         } catch (SQLException e) {
-            response.put("error", e.toString());
+            failed("getActionList", e);
+            return ActionListResponse.ofError(e.toString());
         }
-
-        return response;
     }
 
     public void completeAction(Integer id, String date) {
         String sql = "UPDATE corrective_actions SET completed = TRUE, date_completed = ? WHERE id = ?;";
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+        try (Connection con = pool.getConnection()) {
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
                 pstmt.setTimestamp(1, Timestamp.valueOf(date));
                 pstmt.setInt(2, id);
                 pstmt.executeUpdate();
             }
         } catch (SQLException e) {
+            failed("completeAction", e);
             throw new RuntimeException(e);
         }
     }
@@ -661,24 +905,7 @@ public class SQLManager {
         /**
          * This method returns a list of operators
          */
-        Map<Integer, String> operators = new HashMap<>();
-
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "SELECT code, name FROM operators;";
-
-            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        operators.put(rs.getInt(1), rs.getString(2));
-                    }
-                }
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        return operators;
+        return new HashMap<>(dictionary.getOperators());
     }
 
     public Map<Integer, String> checkAccountableKnitter(String date, String shift, List<Integer> machines) {
@@ -708,7 +935,7 @@ public class SQLManager {
 
         String inClause = joiner.toString();
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
+        try (Connection con = pool.getConnection()) {
 
             String sql = ("SELECT machine_number, name FROM accountable_knitter ak JOIN operators o ON o.code = ak.operator WHERE date = ?::timestamp AND shift = ? AND machine_number in " + inClause + ";");
 
@@ -739,6 +966,7 @@ public class SQLManager {
 
 
         } catch (SQLException e) {
+            failed("checkAccountableKnitter", e);
             throw new RuntimeException(e);
         }
 
@@ -766,19 +994,10 @@ public class SQLManager {
         Timestamp dateTimestamp = Timestamp.valueOf(date + " 00:00:00");
 
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "DELETE FROM accountable_knitter WHERE date = ?::timestamp AND shift = ? AND machine_number = ?;";
-            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-                pstmt.setTimestamp(1, dateTimestamp);
-                pstmt.setString(2, shift);
-
-                for (Integer machine : machines) {
-                    pstmt.setInt(3, machine);
-                    pstmt.executeUpdate();
-                }
-            }
-
-            sql = "INSERT INTO accountable_knitter (date, shift, machine_number, operator) VALUES (?::timestamp, ?, ?, ?);";
+        try (Connection con = pool.getConnection()) {
+            // One knitter per machine and shift, replaced in place, every machine in one batch
+            String sql = "INSERT INTO accountable_knitter (date, shift, machine_number, operator) VALUES (?::timestamp, ?, ?, ?) " +
+                    "ON CONFLICT (date, shift, machine_number) DO UPDATE SET operator = EXCLUDED.operator;";
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
                 pstmt.setInt(4, operator);
                 pstmt.setTimestamp(1, dateTimestamp);
@@ -786,101 +1005,393 @@ public class SQLManager {
 
                 for (Integer machine : machines) {
                     pstmt.setInt(3, machine);
-                    pstmt.executeUpdate();
+                    pstmt.addBatch();
                 }
+                pstmt.executeBatch();
             }
 
         } catch (SQLException e) {
+            failed("SetAccountableKnitter", e);
             throw new RuntimeException(e);
         }
     }
 
 
-    private double roundToOneDecimalPlace(double value) {
-        BigDecimal bd = BigDecimal.valueOf(value);
-        bd = bd.setScale(1, RoundingMode.HALF_UP);
-        return bd.doubleValue();
-    }
-
-
-    public void inputKnittingFaultLog(String data) {
+    public void insertKnittingFaults(List<KnittingFault> faults) {
         /**
-         * This method is used to input a knitting fault into the database
-         * The data is in the format "dd/MM/yyyy hh:mm:ss;fault_code;fault_description;operator_code;operator_name;fault_time;machine_number"
+         * This method inserts a batch of knitting faults in a single transaction
+         * The driver rewrites the batch into multi-row INSERT statements
+         * The shift rollup is updated in the same transaction
+         *
+         * @param faults: The faults to insert
+         *
+         * @throws RuntimeException if the batch could not be written, in which case none of it was
          */
 
-        String[] parts = data.split(";");
-        String unformattedDate = parts[0];
-        Integer faultCode = Integer.parseInt(parts[1]);
-        Integer operatorNumber = Integer.parseInt(parts[3]);
-        String unformattedTime = parts[5];
-        Integer machineNumber = Integer.parseInt(parts[6]);
+        if (faults.isEmpty()) {
+            return;
+        }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        shiftCache.beginWrite();
+        try (Connection con = pool.getConnection()) {
+            String sql = "INSERT INTO faults (date, machine_number, fault_code, operator_code, fault_time) VALUES (?, ?, ?, ?, ?::interval);";
 
-        // Parse the string to a LocalDateTime object
-        LocalDateTime localDateTime = LocalDateTime.parse(unformattedDate, formatter);
+            List<Long> ids = new ArrayList<>(faults.size());
+
+            con.setAutoCommit(false);
+            try (PreparedStatement pstmt = con.prepareStatement(sql, new String[] {"id"})) {
+                for (KnittingFault fault : faults) {
+                    pstmt.setTimestamp(1, fault.date());
+                    pstmt.setInt(2, fault.machineNumber());
+                    pstmt.setInt(3, fault.faultCode());
+                    pstmt.setInt(4, fault.operatorCode());
+                    pstmt.setString(5, fault.faultTime());
+                    pstmt.addBatch();
+                }
 
-        // Convert LocalDateTime to Timestamp
-        Timestamp date = Timestamp.valueOf(localDateTime);
+                pstmt.executeBatch();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "INSERT INTO faults (date, machine_number, fault_code, operator_code, fault_time) VALUES (?, ?, ?, ?, ?::interval);";
+                // Combine faults for the same rollup row first, one multi-row upsert can't touch a row twice
+                Map<RollupKey, long[]> rollup = new HashMap<>();
+                for (KnittingFault fault : faults) {
+                    ShiftCalendar.ShiftKey shiftKey = calendar.shiftOf(fault.date().toLocalDateTime());
+                    long[] totals = rollup.computeIfAbsent(new RollupKey(shiftKey, fault.machineNumber(), fault.faultCode()), key -> new long[2]);
+                    totals[0]++;
+                    totals[1] += fault.faultSeconds();
+                }
+                updateRollup(con, rollup);
 
-            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-                pstmt.setTimestamp(1, date);
-                pstmt.setInt(2, machineNumber);
-                pstmt.setInt(3, faultCode);
-                pstmt.setInt(4, operatorNumber);
-                pstmt.setString(5, unformattedTime);
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
 
-                pstmt.executeUpdate();
+            for (KnittingFault fault : faults) {
+                shiftCache.applyFault(fault.date(), fault.machineNumber(), fault.faultSeconds(), false);
             }
+            liveFeed.faultsAdded(faults, ids);
 
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed("insertKnittingFaults", e);
+            throw new RuntimeException(e);
+        } finally {
+            shiftCache.endWrite();
         }
-
-        System.out.println("Knitting Fault Log:" + data);
     }
 
     public void removeFault(Integer ID) {
         /**
          * This method is used to remove a fault from the database
+         * The shift rollup is updated in the same transaction
          *
          * @param ID: The date of the fault to be removed
          *
          */
 
-        try (Connection con = DriverManager.getConnection(dbURL, username, password)) {
-            String sql = "UPDATE faults SET visible = FALSE WHERE id = ?";
+        shiftCache.beginWrite();
+        try (Connection con = pool.getConnection()) {
+            // Only a fault that was still visible changes the shift totals
+            String sql = "UPDATE faults SET visible = FALSE WHERE id = ? AND visible = TRUE RETURNING date, machine_number, fault_code, EXTRACT(EPOCH FROM fault_time)::bigint";
 
+            con.setAutoCommit(false);
             try (PreparedStatement pstmt = con.prepareStatement(sql)) {
                 pstmt.setInt(1, ID);
-                pstmt.executeUpdate();
+
+                Timestamp date = null;
+                int machineNumber = 0;
+                long faultSeconds = 0;
+                boolean coded = false;
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        date = rs.getTimestamp(1);
+                        machineNumber = rs.getInt(2);
+                        faultSeconds = rs.getLong(4);
+
+                        // A fault with no fault code was never counted in the rollup, as rebuildRollup leaves those out,
+                        // nor in the cached shift totals, which are read from the rollup
+                        int faultCode = rs.getInt(3);
+                        coded = !rs.wasNull();
+                        if (coded) {
+                            ShiftCalendar.ShiftKey shiftKey = calendar.shiftOf(date.toLocalDateTime());
+                            updateRollup(con, Map.of(new RollupKey(shiftKey, machineNumber, faultCode), new long[] {-1, -faultSeconds}));
+                        }
+                    }
+                }
+
+                con.commit();
+
+                if (date != null) {
+                    if (coded) {
+                        shiftCache.applyFault(date, machineNumber, faultSeconds, true);
+                    }
+                    liveFeed.faultRemoved(ID, date, machineNumber);
+                }
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
             }
         } catch (SQLException e) {
+            failed("removeFault", e);
             throw new RuntimeException(e);
+        } finally {
+            shiftCache.endWrite();
         }
     }
 
-    public void inputWarpingFaultLog(String data) {
-        // TODO
-        System.out.println("Warping Fault Log: " + data);
+    public Map<String, Object> rebuildRollup(String from, String to) {
+        /**
+         * This method rebuilds the shift rollup from the faults table, for backfills or repairs
+         * Concurrent inserts and removals wait until the rebuild has committed
+         *
+         * @param from: The first shift date to rebuild in the format "yyyy-MM-dd"
+         *            Example: "2021-08-01"
+         *
+         * @param to: The last shift date to rebuild in the format "yyyy-MM-dd"
+         *          Example: "2021-08-31"
+         *
+         * @return A map containing the following keys:
+         *         - "shifts": The number of shifts rebuilt
+         *         - "rows": The number of rollup rows written
+         *         - "error": An error message if an error occurred
+         */
+        Map<String, Object> response = new HashMap<>();
+        LocalDate firstDate = LocalDate.parse(from);
+        LocalDate lastDate = LocalDate.parse(to);
+
+        try (Connection con = pool.getConnection()) {
+            String deleteSql = "DELETE FROM fault_rollup WHERE shift_date >= ? AND shift_date <= ?;";
+            String insertSql = "INSERT INTO fault_rollup (shift_date, shift, machine_number, fault_code, fault_count, downtime_seconds) " +
+                    "SELECT ?, ?, machine_number, fault_code, COUNT(*), SUM(EXTRACT(EPOCH FROM fault_time))::bigint FROM faults " +
+                    "WHERE date >= ?::timestamp AND date < ?::timestamp AND visible = TRUE AND fault_code IS NOT NULL GROUP BY machine_number, fault_code;";
+
+            con.setAutoCommit(false);
+            try (Statement lock = con.createStatement();
+                 PreparedStatement delete = con.prepareStatement(deleteSql);
+                 PreparedStatement insert = con.prepareStatement(insertSql)) {
+                lock.execute("LOCK TABLE fault_rollup IN EXCLUSIVE MODE;");
+
+                delete.setDate(1, java.sql.Date.valueOf(firstDate));
+                delete.setDate(2, java.sql.Date.valueOf(lastDate));
+                delete.executeUpdate();
+
+                int shifts = 0;
+                for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+                    for (String shift : new String[] {"day", "night"}) {
+                        Timestamp[] bounds = calendar.bounds(date, shift);
+                        insert.setDate(1, java.sql.Date.valueOf(date));
+                        insert.setString(2, shift);
+                        insert.setTimestamp(3, bounds[0]);
+                        insert.setTimestamp(4, bounds[1]);
+                        insert.addBatch();
+                        shifts++;
+                    }
+                }
+
+                int rows = 0;
+                for (int count : insert.executeBatch()) {
+                    rows += Math.max(count, 0);
+                }
+
+                con.commit();
+
+                response.put("shifts", shifts);
+                response.put("rows", rows);
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            failed("rebuildRollup", e);
+            response.put("error", e.toString());
+            e.printStackTrace();
+        }
+
+        // The overview cache is read from the rollup, so anything it holds may now be out of date
+        shiftCache.invalidateAll();
+
+        return response;
+    }
+
+    @Async(AsyncConfig.WRITE_EXECUTOR)
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildRollupIfEmpty() {
+        /**
+         * This method fills the shift rollup from the faults table on startup, if the rollup is empty and there are faults
+         * That is the case once, after the V2 migration has created the rollup on a database that already had faults
+         * Rebuilt a month at a time, so inserts and removals are only held up for one month's rebuild at once
+         */
+        if (!rebuildRollupWhenEmpty) {
+            return;
+        }
+
+        LocalDate first;
+        LocalDate last;
+        try (Connection con = pool.getConnection();
+             Statement stmt = con.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM fault_rollup);")) {
+                if (rs.next() && rs.getBoolean(1)) {
+                    return;
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(date), MAX(date) FROM faults WHERE visible = TRUE AND fault_code IS NOT NULL;")) {
+                if (!rs.next() || rs.getTimestamp(1) == null) {
+                    return;
+                }
+                // A fault before the day shift starts belongs to the previous date's night shift
+                first = rs.getTimestamp(1).toLocalDateTime().toLocalDate().minusDays(1);
+                last = rs.getTimestamp(2).toLocalDateTime().toLocalDate();
+            }
+        } catch (SQLException e) {
+            failed("rebuildRollupIfEmpty", e);
+            log.warn("Failed to check whether the shift rollup needs rebuilding", e);
+            return;
+        }
+
+        log.info("Shift rollup is empty, rebuilding it from the faults from {} to {}", first, last);
+        for (LocalDate from = first; !from.isAfter(last); from = from.withDayOfMonth(1).plusMonths(1)) {
+            LocalDate to = from.withDayOfMonth(from.lengthOfMonth());
+            Map<String, Object> response = rebuildRollup(from.toString(), (to.isAfter(last) ? last : to).toString());
+            if (response.containsKey("error")) {
+                // Whatever has been rebuilt stays, the rest can be rebuilt with POST /api/rebuildRollup
+                log.warn("Shift rollup rebuild stopped at {}: {}", from, response.get("error"));
+                return;
+            }
+        }
+    }
+
+    public Set<LocalDate> getBackfilledDays(LocalDate from, LocalDate to) throws SQLException {
+        /**
+         * This method returns the days in a range that the backfill should leave alone,
+         * because they have been backfilled already or the API has faults for them
+         *
+         * @param from: The first day, inclusive
+         * @param to: The last day, inclusive
+         */
+        String sql = "SELECT day FROM backfill_checkpoint WHERE day >= ? AND day <= ? " +
+                "UNION SELECT DISTINCT date::date FROM faults WHERE date >= ? AND date < ?;";
+
+        Set<LocalDate> days = new HashSet<>();
+        try (Connection con = pool.getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sql)) {
+            pstmt.setDate(1, java.sql.Date.valueOf(from));
+            pstmt.setDate(2, java.sql.Date.valueOf(to));
+            pstmt.setTimestamp(3, Timestamp.valueOf(from.atStartOfDay()));
+            pstmt.setTimestamp(4, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    days.add(rs.getDate(1).toLocalDate());
+                }
+            }
+        } catch (SQLException e) {
+            throw failed("getBackfilledDays", e);
+        }
+        return days;
+    }
+
+    public long copyKnittingFaults(LocalDate day, String source, Reader csv, int rejected) throws SQLException, IOException {
+        /**
+         * This method bulk loads a day of knitting faults with COPY, and records the day as backfilled in the same transaction
+         * The shift rollup is not updated, rebuild it for the days loaded once the backfill is done
+         *
+         * @param day: The day the faults were logged on
+         * @param source: Where the faults were read from
+         * @param csv: One fault per line, "date,fault_code,operator_code,fault_time,machine_number"
+         *           Example: "2021-08-25 06:31:12,4,12,200 seconds,3"
+         * @param rejected: The number of lines in the source that could not be loaded
+         *
+         * @return The number of faults loaded
+         */
+        String copySql = "COPY faults (date, fault_code, operator_code, fault_time, machine_number) FROM STDIN WITH (FORMAT csv);";
+        String checkpointSql = "INSERT INTO backfill_checkpoint (day, source, rows, rejected) VALUES (?, ?, ?, ?);";
+
+        try (Connection con = pool.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement checkpoint = con.prepareStatement(checkpointSql)) {
+                CopyManager copy = con.unwrap(PGConnection.class).getCopyAPI();
+                long rows = copy.copyIn(copySql, csv);
+
+                // Fails on the primary key if the day was loaded meanwhile, and the faults go with it
+                checkpoint.setDate(1, java.sql.Date.valueOf(day));
+                checkpoint.setString(2, source);
+                checkpoint.setLong(3, rows);
+                checkpoint.setInt(4, rejected);
+                checkpoint.executeUpdate();
+
+                con.commit();
+                return rows;
+            } catch (SQLException | IOException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw failed("copyKnittingFaults", e);
+        }
     }
 
-    public void inputKnittingProductionLog(String data) {
-        // TODO
-        System.out.println("Knitting Production Log: " + data);
+    private SQLException failed(String method, SQLException e) {
+        // Most methods turn a failure into an error response, which the faultstore.query timer records as a success
+        meterRegistry.counter("faultstore.query.errors", "method", method, "sqlState", sqlStateClass(e)).increment();
+        return e;
     }
 
-    public void inputWarpingProductionLog(String data) {
-        // TODO
-        System.out.println("Warping Production Log: " + data);
+    private static String sqlStateClass(SQLException e) {
+        // "08" connection, "22" data, "23" constraint, "57" cancelled or shut down, see the PostgreSQL error codes
+        return e.getSQLState() != null && e.getSQLState().length() >= 2 ? e.getSQLState().substring(0, 2) : "none";
     }
 
-    public void inputKnittingWarpRefLog(String data) {
-        // TODO
-        System.out.println("Knitting Warp Ref Log: " + data);
+    private record RollupKey(ShiftCalendar.ShiftKey shift, int machineNumber, int faultCode) {}
+
+    private void updateRollup(Connection con, Map<RollupKey, long[]> deltas) throws SQLException {
+        // Each delta is {fault count, downtime seconds}, rows left with no faults are removed
+        String upsertSql = "INSERT INTO fault_rollup (shift_date, shift, machine_number, fault_code, fault_count, downtime_seconds) VALUES (?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (shift_date, shift, machine_number, fault_code) DO UPDATE SET " +
+                "fault_count = fault_rollup.fault_count + EXCLUDED.fault_count, downtime_seconds = fault_rollup.downtime_seconds + EXCLUDED.downtime_seconds;";
+        String cleanupSql = "DELETE FROM fault_rollup WHERE shift_date = ? AND shift = ? AND machine_number = ? AND fault_code = ? AND fault_count <= 0;";
+
+        boolean anyRemoved = false;
+        try (PreparedStatement upsert = con.prepareStatement(upsertSql)) {
+            for (Map.Entry<RollupKey, long[]> entry : deltas.entrySet()) {
+                RollupKey key = entry.getKey();
+                upsert.setDate(1, java.sql.Date.valueOf(key.shift().date()));
+                upsert.setString(2, key.shift().shift());
+                upsert.setInt(3, key.machineNumber());
+                upsert.setInt(4, key.faultCode());
+                upsert.setLong(5, entry.getValue()[0]);
+                upsert.setLong(6, entry.getValue()[1]);
+                upsert.addBatch();
+                anyRemoved |= entry.getValue()[0] < 0;
+            }
+            upsert.executeBatch();
+        }
+
+        if (anyRemoved) {
+            try (PreparedStatement cleanup = con.prepareStatement(cleanupSql)) {
+                for (RollupKey key : deltas.keySet()) {
+                    cleanup.setDate(1, java.sql.Date.valueOf(key.shift().date()));
+                    cleanup.setString(2, key.shift().shift());
+                    cleanup.setInt(3, key.machineNumber());
+                    cleanup.setInt(4, key.faultCode());
+                    cleanup.addBatch();
+                }
+                cleanup.executeBatch();
+            }
+        }
     }
-}
\ No newline at end of file
+}
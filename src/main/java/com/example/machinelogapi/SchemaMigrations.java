@@ -0,0 +1,52 @@
+/**
+ *  This class brings the database schema up to date when the API starts, with the Flyway migrations in resources/db/migration.
+ *   Each migration runs once, in version order, and is recorded in flyway_schema_history.
+ *   A database whose tables were created by hand before there were migrations is baselined at version 1 the first time,
+ *   so only the migrations after the original tables are run on it.
+ *   Run by ConnectionPool before the pool is handed out, so nothing queries a schema that is still being changed.
+ */
+
+package com.example.machinelogapi;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+final class SchemaMigrations {
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    private SchemaMigrations() {}
+
+    static void migrate(DataSource dataSource) {
+        /**
+         * This method applies every migration the database doesn't have yet
+         * A database that can't be reached is left as it is, the API still starts and the migrations run on the next start
+         * Any other failure, such as a migration that fails part way or one whose checksum has changed, stops the API starting,
+         * as it would otherwise run against a schema it doesn't match
+         *
+         * @param dataSource: The pool to take the connection for the migrations from
+         *
+         * @throws FlywayException if the database was reached but couldn't be migrated
+         */
+        try {
+            MigrateResult result = Flyway.configure()
+                    .dataSource(dataSource)
+                    .locations("classpath:db/migration")
+                    .baselineOnMigrate(true)
+                    .baselineVersion("1")
+                    .load()
+                    .migrate();
+
+            log.info("Schema at version {}, {} migrations applied", result.targetSchemaVersion, result.migrationsExecuted);
+        } catch (FlywayException e) {
+            if (!SqlFailures.isTransient(e)) {
+                throw e;
+            }
+            log.warn("Database unreachable, schema migrations skipped until the next start", e);
+        }
+    }
+}
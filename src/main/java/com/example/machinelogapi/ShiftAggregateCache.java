@@ -0,0 +1,156 @@
+/**
+ *  This class caches the total fault time per machine for each shift, as used by the overview.
+ *   Shifts are keyed as in ShiftCalendar, by the date the shift starts on and "day" or "night", and are evicted least recently used first.
+ *   Cached shifts are never reloaded, instead the FaultStore applies every fault it inserts or removes to them,
+ *   so the live shift stays current without going back to the database.
+ *   Totals are kept in arrays at the MachineRegistry's indexes of the knitting machines, faults on other machines aren't counted,
+ *   and every cached shift is dropped when the knitting machines change.
+ *
+ *   A load that overlaps a write is returned but not cached, so a fault can't be counted twice
+ *   by being both read from the database and applied afterwards.
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ShiftAggregateCache {
+
+    // The fault seconds and number of faults of each machine in a shift, at the machine's index
+    record ShiftTotals(MachineIndex machines, long[] faultSeconds, int[] faults) {
+
+        long faultSecondsOf(int machineNumber) {
+            int index = machines.indexOf(machineNumber);
+            return index < 0 ? 0 : faultSeconds[index];
+        }
+
+        ShiftTotals copy() {
+            return new ShiftTotals(machines, faultSeconds.clone(), faults.clone());
+        }
+    }
+
+    interface Loader {
+        // Adds each machine's totals at its index, machines that aren't in the index are skipped
+        void load(MachineIndex machines, long[] faultSeconds, int[] faults) throws SQLException;
+    }
+
+    private final ShiftCalendar calendar;
+    private final MachineRegistry registry;
+    private final Map<ShiftCalendar.ShiftKey, ShiftTotals> shifts;
+
+    // Bumped at the start and end of every write, and counts the writes that have not been applied yet
+    private long version = 0;
+    private int writesInFlight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    ShiftAggregateCache(ShiftCalendar calendar, MachineRegistry registry, @Value("${cache.overview.maxShifts:512}") int maxShifts) {
+        this.calendar = calendar;
+        this.registry = registry;
+        shifts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ShiftCalendar.ShiftKey, ShiftTotals> eldest) {
+                return size() > maxShifts;
+            }
+        };
+        registry.addListener(this::invalidateAll);
+    }
+
+    public ShiftTotals getShiftTotals(String date, String shift, Loader loader) throws SQLException {
+        /**
+         * This method returns the total fault time in seconds and the number of faults per knitting machine for a shift
+         *
+         * @param date: The date in the format "yyyy-MM-dd"
+         * @param shift: The shift in the format "day" or "night"
+         * @param loader: Reads the totals from the database when the shift is not cached
+         *
+         * @return The totals, a copy the caller can keep
+         */
+        ShiftCalendar.ShiftKey key = ShiftCalendar.keyOf(date, shift);
+        long startVersion;
+
+        synchronized (this) {
+            ShiftTotals cached = shifts.get(key);
+            if (cached != null) {
+                hits++;
+                return cached.copy();
+            }
+            misses++;
+            startVersion = writesInFlight == 0 ? version : -1;
+        }
+
+        MachineIndex machines = registry.knitting();
+        ShiftTotals loaded = new ShiftTotals(machines, new long[machines.size()], new int[machines.size()]);
+        loader.load(machines, loaded.faultSeconds(), loaded.faults());
+
+        synchronized (this) {
+            if (startVersion == version) {
+                shifts.put(key, loaded.copy());
+            }
+        }
+
+        return loaded;
+    }
+
+    synchronized ShiftTotals peekShiftTotals(ShiftCalendar.ShiftKey key) {
+        /**
+         * This method returns the cached totals for a shift without loading them, or null if they are not cached
+         */
+        ShiftTotals cached = shifts.get(key);
+        return cached == null ? null : cached.copy();
+    }
+
+    synchronized void beginWrite() {
+        version++;
+        writesInFlight++;
+    }
+
+    synchronized void endWrite() {
+        version++;
+        writesInFlight--;
+    }
+
+    synchronized void applyFault(Timestamp date, int machineNumber, long faultSeconds, boolean removed) {
+        /**
+         * This method applies a committed insert or removal to the cached shift it belongs to
+         * Must be called between beginWrite and endWrite
+         */
+        ShiftCalendar.ShiftKey key = calendar.shiftOf(date.toLocalDateTime());
+        ShiftTotals cached = shifts.get(key);
+        int index = cached == null ? -1 : cached.machines().indexOf(machineNumber);
+        if (index < 0) {
+            return;
+        }
+
+        if (removed) {
+            cached.faultSeconds()[index] -= faultSeconds;
+            cached.faults()[index]--;
+        } else {
+            cached.faultSeconds()[index] += faultSeconds;
+            cached.faults()[index]++;
+        }
+    }
+
+    synchronized void invalidateAll() {
+        // Also fails any load in progress, it may have read totals that are about to change
+        version++;
+        shifts.clear();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("shifts", shifts.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+}
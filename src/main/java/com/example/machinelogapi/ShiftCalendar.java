@@ -0,0 +1,213 @@
+/**
+ *  This class is the shift calendar: which shift a moment falls in, and when each shift starts and ends.
+ *   Every date has a day shift and a night shift, keyed by the date the shift starts on.
+ *   The day shift starts at its pattern's day start, the night shift at its night start and runs until the next date's day shift,
+ *   so every moment is in exactly one shift.
+ *
+ *   The pattern for a date is shifts.holiday on the dates in shifts.holidays, shifts.weekend on shifts.weekendDays, otherwise shifts.weekday.
+ *   Boundaries are kept as seconds of local time, precomputed for shifts.precomputeYears either side of startup,
+ *   so finding the shift of a fault is an array lookup and two comparisons. Dates outside that are worked out when asked.
+ *   Changing the patterns changes which shift existing faults count towards, rebuild the rollup over the dates affected.
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ShiftCalendar {
+
+    public record ShiftKey(LocalDate date, String shift) {}
+
+    private record Pattern(LocalTime dayStart, LocalTime nightStart) {}
+
+    private final Pattern weekday;
+    private final Pattern weekend;
+    private final Pattern holiday;
+    private final Set<DayOfWeek> weekendDays = EnumSet.noneOf(DayOfWeek.class);
+    private final Set<LocalDate> holidays = new HashSet<>();
+
+    // Indexed by days since firstDay, one day past the last precomputed date so its night shift has an end
+    private final long firstDay;
+    private final long[] dayStarts;
+    private final long[] nightStarts;
+    private final ShiftKey[] dayKeys;
+    private final ShiftKey[] nightKeys;
+
+    ShiftCalendar(@Value("${shifts.weekday:06:00,17:30}") String weekday,
+                  @Value("${shifts.weekend:06:00,17:30}") String weekend,
+                  @Value("${shifts.weekendDays:SATURDAY,SUNDAY}") String weekendDays,
+                  @Value("${shifts.holiday:06:00,17:30}") String holiday,
+                  @Value("${shifts.holidays:}") String holidays,
+                  @Value("${shifts.precomputeYears:10}") int precomputeYears) {
+        this.weekday = parsePattern("shifts.weekday", weekday);
+        this.weekend = parsePattern("shifts.weekend", weekend);
+        this.holiday = parsePattern("shifts.holiday", holiday);
+
+        for (String day : weekendDays.split(",")) {
+            if (!day.isBlank()) {
+                this.weekendDays.add(DayOfWeek.valueOf(day.trim().toUpperCase()));
+            }
+        }
+        for (String date : holidays.split(",")) {
+            if (!date.isBlank()) {
+                this.holidays.add(LocalDate.parse(date.trim()));
+            }
+        }
+
+        LocalDate today = LocalDate.now();
+        firstDay = today.minusYears(precomputeYears).toEpochDay();
+        int days = (int) (today.plusYears(precomputeYears).toEpochDay() - firstDay) + 2;
+
+        dayStarts = new long[days];
+        nightStarts = new long[days];
+        dayKeys = new ShiftKey[days];
+        nightKeys = new ShiftKey[days];
+        for (int i = 0; i < days; i++) {
+            LocalDate date = LocalDate.ofEpochDay(firstDay + i);
+            Pattern pattern = patternOf(date);
+            dayStarts[i] = seconds(date.atTime(pattern.dayStart()));
+            nightStarts[i] = seconds(date.atTime(pattern.nightStart()));
+            dayKeys[i] = new ShiftKey(date, "day");
+            nightKeys[i] = new ShiftKey(date, "night");
+        }
+    }
+
+    public ShiftKey shiftOf(LocalDateTime dateTime) {
+        /**
+         * This method returns the shift a moment falls in
+         *
+         * @param dateTime: The moment, in local time
+         *
+         * @return The date the shift started on and "day" or "night"
+         */
+        long seconds = seconds(dateTime);
+        long day = dateTime.toLocalDate().toEpochDay();
+
+        // Before the day shift starts it is still the previous date's night shift
+        if (seconds < dayStart(day)) {
+            return key(day - 1, "night");
+        }
+        if (seconds < nightStart(day)) {
+            return key(day, "day");
+        }
+        return key(day, "night");
+    }
+
+    public Timestamp[] bounds(LocalDate date, String shift) {
+        /**
+         * This method returns when a shift starts and ends
+         *
+         * @param date: The date the shift starts on
+         * @param shift: The shift, "day" or "night"
+         *
+         * @return The start, inclusive, and the end, exclusive
+         */
+        long[] seconds = boundSeconds(date.toEpochDay(), shift);
+        return new Timestamp[] {timestamp(seconds[0]), timestamp(seconds[1])};
+    }
+
+    public double elapsedHours(LocalDate date, String shift) {
+        /**
+         * This method returns the hours a shift runs for, or has run for so far if it is the current shift
+         *
+         * @param date: The date the shift starts on
+         * @param shift: The shift, "day" or "night"
+         */
+        long[] seconds = boundSeconds(date.toEpochDay(), shift);
+
+        LocalDateTime now = LocalDateTime.now();
+        double nowSeconds = seconds(now) + now.getNano() / 1e9;
+        if (nowSeconds > seconds[0] && nowSeconds < seconds[1]) {
+            return (nowSeconds - seconds[0]) / 3600.0;
+        }
+        return (seconds[1] - seconds[0]) / 3600.0;
+    }
+
+    public boolean hasStarted(LocalDate date, String shift) {
+        return seconds(LocalDateTime.now()) >= boundSeconds(date.toEpochDay(), shift)[0];
+    }
+
+    static ShiftKey keyOf(String date, String shift) {
+        return new ShiftKey(LocalDate.parse(date), shiftName(shift));
+    }
+
+    static String shiftName(String shift) {
+        // Anything other than "day" has always been treated as the night shift
+        return shift.equals("day") ? "day" : "night";
+    }
+
+    private long[] boundSeconds(long day, String shift) {
+        if (shiftName(shift).equals("day")) {
+            return new long[] {dayStart(day), nightStart(day)};
+        }
+        return new long[] {nightStart(day), dayStart(day + 1)};
+    }
+
+    private long dayStart(long day) {
+        int index = (int) (day - firstDay);
+        if (day >= firstDay && index < dayStarts.length) {
+            return dayStarts[index];
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return seconds(date.atTime(patternOf(date).dayStart()));
+    }
+
+    private long nightStart(long day) {
+        int index = (int) (day - firstDay);
+        if (day >= firstDay && index < nightStarts.length) {
+            return nightStarts[index];
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return seconds(date.atTime(patternOf(date).nightStart()));
+    }
+
+    private ShiftKey key(long day, String shift) {
+        int index = (int) (day - firstDay);
+        if (day >= firstDay && index < dayKeys.length) {
+            return shift.equals("day") ? dayKeys[index] : nightKeys[index];
+        }
+        return new ShiftKey(LocalDate.ofEpochDay(day), shift);
+    }
+
+    private Pattern patternOf(LocalDate date) {
+        if (holidays.contains(date)) {
+            return holiday;
+        }
+        return weekendDays.contains(date.getDayOfWeek()) ? weekend : weekday;
+    }
+
+    private static Pattern parsePattern(String name, String value) {
+        // "<day shift start>,<night shift start>", for example "06:00,17:30"
+        String[] times = value.split(",");
+        if (times.length != 2) {
+            throw new IllegalArgumentException(name + " must be \"<day shift start>,<night shift start>\", was \"" + value + "\"");
+        }
+
+        Pattern pattern = new Pattern(LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim()));
+        if (!pattern.dayStart().isBefore(pattern.nightStart())) {
+            throw new IllegalArgumentException(name + ": the day shift must start before the night shift, was \"" + value + "\"");
+        }
+        return pattern;
+    }
+
+    private static long seconds(LocalDateTime dateTime) {
+        // Seconds of local time, timestamps in the database have no time zone either
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static Timestamp timestamp(long seconds) {
+        return Timestamp.valueOf(LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC));
+    }
+}
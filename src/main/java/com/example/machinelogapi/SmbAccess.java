@@ -0,0 +1,235 @@
+/**
+ *  This class holds the one authenticated SMB context used to read from the file server.
+ *   jcifs keeps transports and sessions in the context they were opened with, so by building the context once
+ *   and reusing it, only the first read pays for the negotiate and session setup, later reads go straight to the file.
+ *   Username and password are loaded from config.properties, timeouts and buffer sizes come from application.properties.
+ *   Time spent reaching a file (connecting and fetching its attributes) is reported separately from time spent reading it.
+ *   Each call is also timed as smb.requests, tagged with the operation: "stat", "list" or "read".
+ */
+
+package com.example.machinelogapi;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.smb.NtlmPasswordAuthenticator;
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbFileInputStream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SmbAccess {
+
+    public record FileInfo(long lastModified, long size) {}
+
+    public interface ContentReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    private final BaseContext baseContext;
+    private final CIFSContext authContext;
+    private final int readBufferSize;
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong connectNanos = new AtomicLong();
+    private final AtomicLong maxConnectNanos = new AtomicLong();
+    private final AtomicLong transfers = new AtomicLong();
+    private final AtomicLong transferNanos = new AtomicLong();
+    private final AtomicLong maxTransferNanos = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private final Timer statTimer;
+    private final Timer listTimer;
+    private final Timer readTimer;
+
+    SmbAccess(MeterRegistry meterRegistry,
+              @Value("${smb.connTimeoutMs:5000}") int connTimeoutMs,
+              @Value("${smb.responseTimeoutMs:10000}") int responseTimeoutMs,
+              @Value("${smb.soTimeoutMs:60000}") int soTimeoutMs,
+              @Value("${smb.sessionTimeoutMs:300000}") int sessionTimeoutMs,
+              @Value("${smb.readBufferSize:262144}") int readBufferSize) throws CIFSException {
+
+        String smbUsername = null;
+        String smbPassword = null;
+        try {
+            Properties props = new Properties();
+            props.load(new FileInputStream("config.properties"));
+            smbUsername = props.getProperty("smb.username");
+            smbPassword = props.getProperty("smb.password");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.readBufferSize = readBufferSize;
+        this.statTimer = Timer.builder("smb.requests").tag("operation", "stat").register(meterRegistry);
+        this.listTimer = Timer.builder("smb.requests").tag("operation", "list").register(meterRegistry);
+        this.readTimer = Timer.builder("smb.requests").tag("operation", "read").register(meterRegistry);
+
+        Properties config = new Properties();
+        config.setProperty("jcifs.smb.client.connTimeout", String.valueOf(connTimeoutMs));
+        config.setProperty("jcifs.smb.client.responseTimeout", String.valueOf(responseTimeoutMs));
+        config.setProperty("jcifs.smb.client.soTimeout", String.valueOf(soTimeoutMs));
+        // Idle sessions are kept this long, so reports a few minutes apart still find the session open
+        config.setProperty("jcifs.smb.client.sessionTimeout", String.valueOf(sessionTimeoutMs));
+        config.setProperty("jcifs.smb.client.rcv_buf_size", String.valueOf(readBufferSize));
+        config.setProperty("jcifs.smb.client.useLargeReadWrite", "true");
+
+        baseContext = new BaseContext(new PropertyConfiguration(config));
+        authContext = baseContext.withCredentials(new NtlmPasswordAuthenticator("", smbUsername, smbPassword));
+    }
+
+    public FileInfo stat(String url) throws IOException {
+        /**
+         * This method returns the last modified time and size of a file, without reading it
+         * The first call also opens the session, so this is where handshakes are paid for
+         *
+         * @param url: The smb:// URL of the file
+         */
+        long start = System.nanoTime();
+        try (SmbFile smbFile = new SmbFile(url, authContext)) {
+            return new FileInfo(smbFile.lastModified(), smbFile.length());
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            record(connects, connectNanos, maxConnectNanos, statTimer, System.nanoTime() - start);
+        }
+    }
+
+    public String[] list(String url) throws IOException {
+        /**
+         * This method returns the names of the files and folders in a folder
+         *
+         * @param url: The smb:// URL of the folder, ending in "/"
+         */
+        long start = System.nanoTime();
+        try (SmbFile smbFile = new SmbFile(url, authContext)) {
+            return smbFile.list();
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            record(connects, connectNanos, maxConnectNanos, listTimer, System.nanoTime() - start);
+        }
+    }
+
+    public <T> T read(String url, ContentReader<T> reader) throws IOException {
+        return read(url, 0, reader);
+    }
+
+    public <T> T read(String url, long offset, ContentReader<T> reader) throws IOException {
+        /**
+         * This method opens a file and passes its contents to the reader
+         * Reads are buffered, so the reader can consume the stream in small pieces without a round-trip for each one
+         *
+         * @param url: The smb:// URL of the file
+         * @param offset: The byte to start reading from, skipping to it costs nothing as jcifs only moves its file pointer
+         * @param reader: Consumes the stream, which is closed once it returns
+         */
+        long start = System.nanoTime();
+        try (SmbFile smbFile = new SmbFile(url, authContext);
+             SmbFileInputStream smbIn = new SmbFileInputStream(smbFile)) {
+            smbIn.skip(offset);
+            CountingInputStream in = new CountingInputStream(new BufferedInputStream(smbIn, readBufferSize));
+            try {
+                return reader.read(in);
+            } finally {
+                bytesRead.addAndGet(in.count);
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            record(transfers, transferNanos, maxTransferNanos, readTimer, System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        /**
+         * This method returns how long reads from the file server take
+         *
+         * @return A map containing the following keys:
+         *         - "connects": Attribute lookups and folder listings, including any session setup, with their average and maximum time
+         *         - "transfers": File reads, with their average and maximum time and the bytes read
+         *         - "failures": Lookups or reads that threw
+         */
+        Map<String, Object> connectStats = new HashMap<>();
+        long connectCount = connects.get();
+        connectStats.put("count", connectCount);
+        connectStats.put("averageMs", connectCount == 0 ? 0.0 : connectNanos.get() / 1e6 / connectCount);
+        connectStats.put("maxMs", maxConnectNanos.get() / 1e6);
+
+        Map<String, Object> transferStats = new HashMap<>();
+        long transferCount = transfers.get();
+        transferStats.put("count", transferCount);
+        transferStats.put("averageMs", transferCount == 0 ? 0.0 : transferNanos.get() / 1e6 / transferCount);
+        transferStats.put("maxMs", maxTransferNanos.get() / 1e6);
+        transferStats.put("bytes", bytesRead.get());
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("connects", connectStats);
+        stats.put("transfers", transferStats);
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            baseContext.close();
+        } catch (CIFSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void record(AtomicLong count, AtomicLong total, AtomicLong max, Timer timer, long nanos) {
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *  Sorts a failed database write into the cases its callers handle differently.
+ *   - transient: the database couldn't be reached or no pooled connection came free (SQLState class 08, or the pool timed out),
+ *     the same write can succeed later and is worth retrying
+ *   - data error: the database refused the rows themselves (SQLState class 22 or 23, such as a foreign key to an unknown fault code),
+ *     retrying them can never succeed, but the other rows in the same batch can still be written
+ *   The SQLException is looked for through the cause chain, the FaultStore wraps it in a RuntimeException and Flyway in a FlywayException.
+ */
+
+package com.example.machinelogapi;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+final class SqlFailures {
+
+    private SqlFailures() {
+    }
+
+    static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            // HikariCP reports a pool timeout as a SQLTransientConnectionException, usually without a SQLState
+            if (cause instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (hasSqlStateClass(cause, "08")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isDataError(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (hasSqlStateClass(cause, "22") || hasSqlStateClass(cause, "23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasSqlStateClass(Throwable cause, String stateClass) {
+        if (!(cause instanceof SQLException sqlException)) {
+            return false;
+        }
+
+        // A batch failure keeps the statement's own error as the next exception
+        for (SQLException e = sqlException; e != null; e = e.getNextException()) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith(stateClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ *  Executors for the @Async methods in DataService.
+ *   Reads and writes run in separate lanes, so a burst of faults from the machines can't starve the dashboards.
+ *   The read lane gets the pool after the write permits and one connection for the ingestion queue's writer thread.
+ *   The lanes only bound the @Async work, other users take connections from the same pool outside them:
+ *   exports (export.maxConcurrent), bulk imports, the backfill (backfill.loadPermits), the dictionary and machine registry reloads
+ *   and partition maintenance. When those are busy the lanes can ask for more connections than are free,
+ *   and wait up to psql.pool.connectionTimeoutMs for one.
+ *   Calls that only queue work and never touch the database, such as a single knitting fault, don't run in a lane at all.
+ */
+
+package com.example.machinelogapi.config;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+
+@Configuration
+public class AsyncConfig implements AsyncConfigurer {
+
+    public static final String READ_EXECUTOR = "dbReadExecutor";
+    public static final String WRITE_EXECUTOR = "dbWriteExecutor";
+
+    private final DbBulkhead readExecutor;
+
+    AsyncConfig(@Qualifier(READ_EXECUTOR) DbBulkhead readExecutor) {
+        this.readExecutor = readExecutor;
+    }
+
+    @Bean(READ_EXECUTOR)
+    static DbBulkhead dbReadExecutor(@Value("${psql.pool.maxSize:10}") int poolSize,
+                                     @Value("${executor.write.permits:2}") int writePermits,
+                                     @Value("${executor.read.maxQueued:500}") int maxQueued) {
+        return new DbBulkhead("db-read", Math.max(1, poolSize - writePermits - 1), maxQueued);
+    }
+
+    @Bean(WRITE_EXECUTOR)
+    static DbBulkhead dbWriteExecutor(@Value("${executor.write.permits:2}") int writePermits,
+                                      @Value("${executor.write.maxQueued:1000}") int maxQueued) {
+        return new DbBulkhead("db-write", writePermits, maxQueued);
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        // Any @Async method without a named executor is treated as a read
+        return readExecutor;
+    }
+}
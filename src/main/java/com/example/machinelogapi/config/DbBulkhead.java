@@ -0,0 +1,93 @@
+/**
+ *  Runs blocking database work on virtual threads, at most a fixed number at a time.
+ *   Every task gets its own virtual thread, which waits for one of the permits before running.
+ *   The permits are sized to this lane's share of the connection pool, so waiting happens here,
+ *   where it is cheap and visible, instead of inside the pool.
+ *   Once more than maxQueued tasks are waiting, new tasks are rejected rather than queued.
+ */
+
+package com.example.machinelogapi.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+
+public class DbBulkhead implements AsyncTaskExecutor, AutoCloseable {
+    private final String name;
+    private final int permits;
+    private final int maxQueued;
+    private final Semaphore semaphore;
+    private final ExecutorService threads;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public DbBulkhead(String name, int permits, int maxQueued) {
+        this.name = name;
+        this.permits = permits;
+        this.maxQueued = maxQueued;
+        this.semaphore = new Semaphore(permits, true);
+        this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException(name + " has " + maxQueued + " tasks waiting for the database");
+        }
+
+        threads.execute(() -> {
+            long waitStart = System.nanoTime();
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                queued.decrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long waited = System.nanoTime() - waitStart;
+            queued.decrementAndGet();
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+            try {
+                task.run();
+            } finally {
+                semaphore.release();
+                completed.incrementAndGet();
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long done = completed.get();
+        stats.put("permits", permits);
+        stats.put("active", permits - semaphore.availablePermits());
+        stats.put("queued", queued.get());
+        stats.put("maxQueued", maxQueued);
+        stats.put("completed", done);
+        stats.put("rejected", rejected.get());
+        stats.put("averageWaitMs", done == 0 ? 0.0 : totalWaitNanos.get() / 1e6 / done);
+        stats.put("maxWaitMs", maxWaitNanos.get() / 1e6);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        threads.close();
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ *  Serialization of the responses.
+ *   Blackbird has Jackson read the response records through generated accessors instead of reflection,
+ *   which is most of the cost of writing a large fault log once the rows are records rather than maps.
+ *   The response records are all @JsonInclude(NON_NULL) and carry an "error" component: a component left null is left out of the JSON,
+ *   so a failed request is still sent as just { "error": "..." } and a successful one without an "error" key.
+ */
+
+package com.example.machinelogapi.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    // Spring Boot registers every Module bean with the ObjectMapper it builds
+    @Bean
+    Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
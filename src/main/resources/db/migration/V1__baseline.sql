@@ -0,0 +1,51 @@
+-- The tables as they were first created by hand, before the schema was migrated by the API.
+-- A database that already has them is baselined at this version when the API first starts, and this script is skipped.
+
+CREATE TABLE fault_codes (
+    code INT PRIMARY KEY,
+    description TEXT NOT NULL
+);
+
+CREATE TABLE operators (
+    code INT PRIMARY KEY,
+    name TEXT NOT NULL
+);
+
+CREATE TABLE faults (
+    id SERIAL PRIMARY KEY,
+    date TIMESTAMP NOT NULL,
+    fault_code INT REFERENCES fault_codes(code),
+    operator_code INT REFERENCES operators(code),
+    fault_time INTERVAL NOT NULL,
+    machine_number INT NOT NULL,
+    visible BOOLEAN DEFAULT TRUE
+);
+
+CREATE TABLE accountable_knitter (
+    id SERIAL PRIMARY KEY,
+    date TIMESTAMP NOT NULL,
+    shift TEXT NOT NULL,
+    machine_number INT NOT NULL,
+    operator INT NOT NULL
+);
+
+CREATE TABLE corrective_actions (
+    id SERIAL PRIMARY KEY,
+    date TIMESTAMP NOT NULL,
+    machine_number INT NOT NULL,
+    isDayShift BOOLEAN NOT NULL,
+    isLinearThread BOOLEAN NOT NULL DEFAULT FALSE,
+    fault_code INT REFERENCES fault_codes(code),
+    observation TEXT,
+    action TEXT,
+    completed BOOLEAN DEFAULT FALSE,
+    date_completed TIMESTAMP
+);
+
+CREATE TABLE linear_thread (
+    id SERIAL PRIMARY KEY,
+    date TIMESTAMP NOT NULL,
+    machine_number INT NOT NULL,
+    isDayShift BOOLEAN NOT NULL,
+    islinearthread BOOLEAN DEFAULT false
+);
@@ -0,0 +1,23 @@
+-- Tables added for the shift rollup and the archive backfill.
+-- They may already have been created by hand on a database from before migrations, hence IF NOT EXISTS.
+-- A rollup created here starts empty, fill it from the faults with POST /api/rebuildRollup.
+
+-- Fault count and downtime per shift, machine and fault code, kept up to date by the API
+CREATE TABLE IF NOT EXISTS fault_rollup (
+    shift_date DATE NOT NULL,
+    shift TEXT NOT NULL,
+    machine_number INT NOT NULL,
+    fault_code INT NOT NULL REFERENCES fault_codes(code),
+    fault_count INT NOT NULL,
+    downtime_seconds BIGINT NOT NULL,
+    PRIMARY KEY (shift_date, shift, machine_number, fault_code)
+);
+
+-- Days loaded from the archived fault log CSVs by the backfill
+CREATE TABLE IF NOT EXISTS backfill_checkpoint (
+    day DATE PRIMARY KEY,
+    source TEXT NOT NULL,
+    rows BIGINT NOT NULL,
+    rejected INT NOT NULL,
+    loaded_at TIMESTAMP NOT NULL DEFAULT now()
+);
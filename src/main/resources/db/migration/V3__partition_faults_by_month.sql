@@ -0,0 +1,69 @@
+-- faults becomes a table partitioned by month on date, so a query for a shift or a range of days only reads
+-- the partitions the range falls in, however much history has been kept.
+-- Rows for a month without a partition go to faults_default, until ensure_fault_partitions creates the month and moves them in.
+
+ALTER TABLE faults RENAME TO faults_unpartitioned;
+ALTER INDEX faults_pkey RENAME TO faults_unpartitioned_pkey;
+
+-- The primary key of a partitioned table has to include the partition key
+CREATE TABLE faults (
+    id INT NOT NULL DEFAULT nextval('faults_id_seq'),
+    date TIMESTAMP NOT NULL,
+    fault_code INT REFERENCES fault_codes(code),
+    operator_code INT REFERENCES operators(code),
+    fault_time INTERVAL NOT NULL,
+    machine_number INT NOT NULL,
+    visible BOOLEAN DEFAULT TRUE,
+    PRIMARY KEY (id, date)
+) PARTITION BY RANGE (date);
+
+ALTER SEQUENCE faults_id_seq OWNED BY faults.id;
+
+CREATE TABLE faults_default PARTITION OF faults DEFAULT;
+
+-- Every read of the fault log filters on machine_number, a date range and visible, and reads only these columns,
+-- so they are answered from the index alone. Removed faults are left out of it.
+CREATE INDEX faults_visible_machine_date_idx ON faults (machine_number, date, id)
+    INCLUDE (fault_code, operator_code, fault_time)
+    WHERE visible;
+
+-- Creates the partition for every month from first_day to last_day that doesn't have one, named faults_yyyy_mm,
+-- moving in any of its rows that went to faults_default first. Called by the API ahead of the current month and before a backfill.
+CREATE FUNCTION ensure_fault_partitions(first_day DATE, last_day DATE) RETURNS INT AS $$
+DECLARE
+    month DATE := date_trunc('month', first_day)::date;
+    partition TEXT;
+    created INT := 0;
+BEGIN
+    -- One caller at a time, two creating the same month would otherwise collide
+    PERFORM pg_advisory_xact_lock(hashtext('ensure_fault_partitions'));
+
+    WHILE month <= last_day LOOP
+        partition := 'faults_' || to_char(month, 'YYYY_MM');
+
+        IF to_regclass(partition) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I (LIKE faults INCLUDING DEFAULTS)', partition);
+            EXECUTE format('WITH moved AS (DELETE FROM faults_default WHERE date >= %L AND date < %L RETURNING *) INSERT INTO %I SELECT * FROM moved',
+                           month, (month + INTERVAL '1 month')::date, partition);
+            EXECUTE format('ALTER TABLE faults ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                           partition, month, (month + INTERVAL '1 month')::date);
+            created := created + 1;
+        END IF;
+
+        month := (month + INTERVAL '1 month')::date;
+    END LOOP;
+
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Partitions for all of the history and the next few months, then the history is copied across
+SELECT ensure_fault_partitions(COALESCE(min(date)::date, CURRENT_DATE), GREATEST(max(date)::date, (CURRENT_DATE + INTERVAL '3 months')::date))
+FROM faults_unpartitioned;
+
+INSERT INTO faults (id, date, fault_code, operator_code, fault_time, machine_number, visible)
+SELECT id, date, fault_code, operator_code, fault_time, machine_number, visible FROM faults_unpartitioned;
+
+DROP TABLE faults_unpartitioned;
+
+ANALYZE faults;
@@ -0,0 +1,12 @@
+-- A machine has one linear thread status and one accountable knitter per shift, the API now upserts them on these keys.
+-- Duplicates left by the old delete-then-insert are removed first, keeping the latest.
+
+DELETE FROM linear_thread a USING linear_thread b
+WHERE a.date = b.date AND a.machine_number = b.machine_number AND a.isdayshift = b.isdayshift AND a.id < b.id;
+
+ALTER TABLE linear_thread ADD CONSTRAINT linear_thread_shift_key UNIQUE (date, machine_number, isdayshift);
+
+DELETE FROM accountable_knitter a USING accountable_knitter b
+WHERE a.date = b.date AND a.shift = b.shift AND a.machine_number = b.machine_number AND a.id < b.id;
+
+ALTER TABLE accountable_knitter ADD CONSTRAINT accountable_knitter_shift_key UNIQUE (date, shift, machine_number);
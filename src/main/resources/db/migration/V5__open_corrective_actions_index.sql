@@ -0,0 +1,2 @@
+-- The action list is paged by (date, id) over the actions that haven't been completed
+CREATE INDEX IF NOT EXISTS corrective_actions_open_idx ON corrective_actions (date, id) WHERE completed = FALSE;
@@ -0,0 +1,11 @@
+-- Every machine on the floor, read by the API into MachineRegistry
+-- The active knitting machines are the ones the overview, dashboard and trends report on
+CREATE TABLE machines (
+    machine_number INT PRIMARY KEY,
+    type TEXT NOT NULL DEFAULT 'knitting' CHECK (type IN ('knitting', 'warping')),
+    site TEXT NOT NULL DEFAULT 'Long Eaton',
+    active BOOLEAN NOT NULL DEFAULT TRUE
+);
+
+-- The machines the API listed before there was a table
+INSERT INTO machines (machine_number) VALUES (1), (2), (3), (17), (19), (26), (27), (28);
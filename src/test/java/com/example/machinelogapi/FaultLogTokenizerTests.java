@@ -0,0 +1,168 @@
+package com.example.machinelogapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FaultLogTokenizerTests {
+
+    private static final byte[] BIG_ENDIAN_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] LITTLE_ENDIAN_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    @Test
+    void readsBigEndianWithBom() throws IOException {
+        byte[] file = concat(BIG_ENDIAN_BOM, "sep=;\r\n25/08/2021 06:31:12;4;Standing\r\n".getBytes(StandardCharsets.UTF_16BE));
+        FaultLogTokenizer tokenizer = tokenizer(file);
+
+        assertEquals(List.of("sep=;", "25/08/2021 06:31:12;4;Standing"), lines(tokenizer));
+        assertTrue(tokenizer.isBigEndian());
+        assertEquals(file.length, tokenizer.bytesConsumed());
+    }
+
+    @Test
+    void readsLittleEndianWithBom() throws IOException {
+        byte[] file = concat(LITTLE_ENDIAN_BOM, "a;b\r\nc;d\r\n".getBytes(StandardCharsets.UTF_16LE));
+        FaultLogTokenizer tokenizer = tokenizer(file);
+
+        assertEquals(List.of("a;b", "c;d"), lines(tokenizer));
+        assertFalse(tokenizer.isBigEndian());
+        assertEquals(file.length, tokenizer.bytesConsumed());
+    }
+
+    @Test
+    void readsBigEndianWithoutBom() throws IOException {
+        byte[] file = "a;b\nc;d".getBytes(StandardCharsets.UTF_16BE);
+        FaultLogTokenizer tokenizer = tokenizer(file);
+
+        assertEquals(List.of("a;b", "c;d"), lines(tokenizer));
+        assertTrue(tokenizer.isBigEndian());
+    }
+
+    @Test
+    void splitsFieldsAsStringSplit() throws IOException {
+        String[] lines = {
+                "25/08/2021 06:31:12;4;Standing;12;J Smith;00:03:20;3",
+                "a;;b;;",
+                ";a",
+                "no delimiter",
+                "",
+                "\"Smith; J\";\"4\";x",
+        };
+        FaultLogTokenizer tokenizer = tokenizer(String.join("\r\n", lines).getBytes(StandardCharsets.UTF_16BE));
+
+        for (String line : lines) {
+            assertTrue(tokenizer.nextRow());
+            // Quotes are not special, a delimiter inside them still splits the field
+            assertArrayEquals(line.split(";"), tokenizer.fields(), line);
+        }
+        assertFalse(tokenizer.nextRow());
+    }
+
+    @Test
+    void parsesTypedFields() throws IOException {
+        FaultLogTokenizer tokenizer = tokenizer(" 25/08/2021 06:31:12 ; 4 ;Standing; -12 ;J Smith; 01:03:20 ;x\n".getBytes(StandardCharsets.UTF_16BE));
+
+        assertTrue(tokenizer.nextRow());
+        assertEquals("25/08/2021 06:31:12", tokenizer.trimmedField(0));
+        assertEquals(4, tokenizer.intField(1));
+        assertEquals(-12, tokenizer.intField(3));
+        assertEquals(3800, tokenizer.secondsField(5));
+        assertThrows(NumberFormatException.class, () -> tokenizer.intField(2));
+        assertThrows(NumberFormatException.class, () -> tokenizer.secondsField(1));
+        assertThrows(NumberFormatException.class, () -> tokenizer.intField(6));
+        assertThrows(IndexOutOfBoundsException.class, () -> tokenizer.field(7));
+    }
+
+    @Test
+    void endsLinesAsBufferedReader() throws IOException {
+        FaultLogTokenizer tokenizer = tokenizer("a\rb\r\nc\n\nd".getBytes(StandardCharsets.UTF_16BE));
+
+        assertEquals(List.of("a", "b", "c", "", "d"), lines(tokenizer));
+    }
+
+    @Test
+    void readsLinesLongerThanTheBuffer() throws IOException {
+        String longLine = "x".repeat(50000) + ";1";
+        FaultLogTokenizer tokenizer = tokenizer((longLine + "\nshort").getBytes(StandardCharsets.UTF_16BE));
+
+        assertTrue(tokenizer.nextRow());
+        assertEquals(longLine, tokenizer.line());
+        assertEquals(1, tokenizer.intField(1));
+        assertTrue(tokenizer.nextRow());
+        assertEquals("short", tokenizer.line());
+    }
+
+    @Test
+    void leavesOutAPartialLastLine() throws IOException {
+        byte[] complete = concat(LITTLE_ENDIAN_BOM, "a;1\r\nb;2\r\n".getBytes(StandardCharsets.UTF_16LE));
+        byte[] file = concat(complete, "c;".getBytes(StandardCharsets.UTF_16LE));
+        FaultLogTokenizer tokenizer = new FaultLogTokenizer(new ByteArrayInputStream(file), ';', null, true);
+
+        assertEquals(List.of("a;1", "b;2"), lines(tokenizer));
+        assertEquals(complete.length, tokenizer.bytesConsumed());
+    }
+
+    @Test
+    void leavesOutALineEndingInALoneCarriageReturn() throws IOException {
+        // The '\n' of a "\r\n" may not have been written yet
+        byte[] file = "a\r\nb\r".getBytes(StandardCharsets.UTF_16BE);
+        FaultLogTokenizer tokenizer = new FaultLogTokenizer(new ByteArrayInputStream(file), ';', true, true);
+
+        assertEquals(List.of("a"), lines(tokenizer));
+        assertEquals(6, tokenizer.bytesConsumed());
+    }
+
+    @Test
+    void resumesFromTheOffsetItReported() throws IOException {
+        byte[] first = concat(LITTLE_ENDIAN_BOM, "a;1\r\nb;".getBytes(StandardCharsets.UTF_16LE));
+        FaultLogTokenizer tokenizer = new FaultLogTokenizer(new ByteArrayInputStream(first), ';', null, true);
+        assertEquals(List.of("a;1"), lines(tokenizer));
+        long offset = tokenizer.bytesConsumed();
+
+        // The file has grown since, the rest is read from the offset with the byte order found the first time
+        byte[] grown = concat(first, "2\r\nc;3\r\n".getBytes(StandardCharsets.UTF_16LE));
+        byte[] rest = Arrays.copyOfRange(grown, (int) offset, grown.length);
+        FaultLogTokenizer resumed = new FaultLogTokenizer(new ByteArrayInputStream(rest), ';', tokenizer.isBigEndian(), true);
+
+        assertEquals(List.of("b;2", "c;3"), lines(resumed));
+        assertEquals(grown.length, offset + resumed.bytesConsumed());
+    }
+
+    @Test
+    void decodesAnOddTrailingByteAsReplacement() throws IOException {
+        byte[] file = concat("ab".getBytes(StandardCharsets.UTF_16BE), new byte[] {0x00});
+        FaultLogTokenizer tokenizer = tokenizer(file);
+
+        assertTrue(tokenizer.nextRow());
+        assertEquals("ab\uFFFD", tokenizer.line());
+    }
+
+    private static FaultLogTokenizer tokenizer(byte[] bytes) {
+        return new FaultLogTokenizer(new ByteArrayInputStream(bytes), ';');
+    }
+
+    private static List<String> lines(FaultLogTokenizer tokenizer) throws IOException {
+        List<String> lines = new ArrayList<>();
+        while (tokenizer.nextRow()) {
+            lines.add(tokenizer.line());
+        }
+        return lines;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.machinelogapi;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryFaultStoreTests {
+
+    // A Wednesday, long enough ago that its shifts have ended and run their full 11.5 and 12.5 hours
+    private static final String DATE = "2021-08-25";
+    private static final double DAY_SHIFT_SECONDS = 11.5 * 3600;
+
+    private InMemoryFaultStore store;
+
+    @BeforeEach
+    void setup() {
+        ShiftCalendar calendar = new ShiftCalendar("06:00,17:30", "06:00,17:30", "SATURDAY,SUNDAY", "06:00,17:30", "", 10);
+        MachineRegistry registry = new MachineRegistry(Optional.empty(), "1:knitting:Long Eaton,3:knitting:Long Eaton,5:warping:Long Eaton");
+        ShiftAggregateCache shiftCache = new ShiftAggregateCache(calendar, registry, 16);
+        FaultDictionary dictionary = new FaultDictionary(Optional.empty(), 10000, "1:Standing,2:False Stop,4:Yarn Break", "12:J Smith");
+        dictionary.load();
+        store = new InMemoryFaultStore(shiftCache, calendar, registry, dictionary, new LiveShiftFeed(shiftCache, calendar, dictionary, 256, 1800000, 15000));
+    }
+
+    @Test
+    void insertedFaultsCountTowardsTheirShift() {
+        insert("25/08/2021 06:31:12;1;Standing;12;J Smith;00:10:00;3",
+                "25/08/2021 09:00:00;4;Yarn Break;12;J Smith;00:20:00;3",
+                "25/08/2021 17:29:59;1;Standing;12;J Smith;00:05:00;3",
+                "25/08/2021 17:30:00;2;False Stop;12;J Smith;01:00:00;3",
+                "26/08/2021 05:59:59;2;False Stop;12;J Smith;00:30:00;1");
+
+        OverviewResponse day = store.getOverviewData(DATE, "day");
+        assertArrayEquals(new int[] {3}, day.machines().numbers());
+        assertEquals((DAY_SHIFT_SECONDS - 35 * 60) / DAY_SHIFT_SECONDS * 100.0, day.machines().percentRun()[0], 1e-9);
+
+        MachineCardResponse card = store.getMachineCardData("3", DATE, "day");
+        assertEquals(Map.of("Standing", 15 / 60.0, "Yarn Break", 20 / 60.0), card.downTime());
+        assertEquals(11.5, card.shiftHours());
+
+        // From 17:30 until the next day shift starts at 06:00 is this date's night shift
+        OverviewResponse night = store.getOverviewData(DATE, "night");
+        assertArrayEquals(new int[] {1, 3}, night.machines().numbers());
+        assertEquals(Map.of("False Stop", 1.0), store.getMachineCardData("3", DATE, "night").downTime());
+    }
+
+    @Test
+    void overviewListsOnlyActiveKnittingMachines() {
+        insert("25/08/2021 07:00:00;1;Standing;12;J Smith;00:10:00;3",
+                "25/08/2021 07:00:00;1;Standing;12;J Smith;00:10:00;5",
+                "25/08/2021 07:00:00;1;Standing;12;J Smith;00:10:00;99");
+
+        assertArrayEquals(new int[] {3}, store.getOverviewData(DATE, "day").machines().numbers());
+    }
+
+    @Test
+    void removedFaultsComeOffTheShift() {
+        insert("25/08/2021 07:00:00;1;Standing;12;J Smith;00:10:00;3",
+                "25/08/2021 08:00:00;4;Yarn Break;12;J Smith;00:20:00;3");
+        store.getOverviewData(DATE, "day"); // Cache the shift, removals have to keep it current
+
+        store.removeFault(2);
+        assertEquals(Map.of("Standing", 10 / 60.0), store.getMachineCardData("3", DATE, "day").downTime());
+        assertEquals((DAY_SHIFT_SECONDS - 600) / DAY_SHIFT_SECONDS * 100.0, store.getOverviewData(DATE, "day").machines().percentRun()[0], 1e-9);
+
+        // Removing it again, or an id that never existed, changes nothing
+        store.removeFault(2);
+        store.removeFault(1000);
+        assertEquals(Map.of("Standing", 10 / 60.0), store.getMachineCardData("3", DATE, "day").downTime());
+
+        store.removeFault(1);
+        assertEquals(0, store.getOverviewData(DATE, "day").machines().numbers().length);
+        assertEquals(Map.of(), store.getMachineCardData("3", DATE, "day").downTime());
+    }
+
+    @Test
+    void rebuiltRollupMatchesTheOneKeptOnInsert() {
+        insert("25/08/2021 06:31:12;1;Standing;12;J Smith;00:10:00;3",
+                "25/08/2021 09:00:00;4;Yarn Break;12;J Smith;00:20:00;3",
+                "25/08/2021 18:00:00;2;False Stop;12;J Smith;01:00:00;3",
+                "26/08/2021 05:00:00;2;False Stop;12;J Smith;00:30:00;1",
+                "26/08/2021 07:00:00;1;Standing;12;J Smith;00:05:00;1");
+        store.removeFault(2);
+
+        List<Object> before = shiftData();
+        Map<String, Object> rebuilt = store.rebuildRollup("2021-08-24", "2021-08-26");
+
+        assertEquals(6, rebuilt.get("shifts"));
+        assertEquals(4, rebuilt.get("rows"));
+        assertEquals(before, shiftData());
+    }
+
+    @Test
+    void faultReportTotalsPerFault() {
+        insert("25/08/2021 07:00:00;1;Standing;12;J Smith;00:30:00;3",
+                "25/08/2021 08:00:00;1;Standing;12;J Smith;00:30:00;3",
+                "25/08/2021 09:00:00;4;Yarn Break;12;J Smith;01:00:00;3",
+                "25/08/2021 10:00:00;2;False Stop;12;J Smith;00:00:30;3");
+
+        FaultReportResponse report = store.getFaultReport("3", DATE, "day");
+        assertEquals(2.0, report.totalDownTime());
+        assertEquals(List.of(
+                new FaultReportResponse.Row("Standing", 2, 50.0, 1.0, 50.0),
+                new FaultReportResponse.Row("Yarn Break", 1, 25.0, 1.0, 50.0),
+                new FaultReportResponse.Row("False Stop", 1, 25.0, 0.0, 0.0)), report.faultReport());
+    }
+
+    @Test
+    void pagesTheFaultLogByDateAndId() {
+        // Two faults at the same time are ordered by id
+        insert("25/08/2021 09:00:00;1;Standing;12;J Smith;00:01:00;3",
+                "25/08/2021 07:00:00;1;Standing;12;J Smith;00:02:00;3",
+                "25/08/2021 08:00:00;1;Standing;12;J Smith;00:03:00;3",
+                "25/08/2021 08:00:00;4;Yarn Break;12;J Smith;00:04:00;3",
+                "25/08/2021 10:00:00;1;Standing;12;J Smith;00:05:00;3",
+                "25/08/2021 18:00:00;1;Standing;12;J Smith;00:06:00;3");
+
+        FaultLogResponse first = store.getFaultLog("3", DATE, "day", null, 2);
+        assertEquals(List.of(2L, 3L), ids(first));
+        assertNotNull(first.nextCursor());
+        assertEquals("2021-08-25 07:00:00", first.faultLog().get(0).date());
+        assertEquals("00:02:00", first.faultLog().get(0).faultTime());
+
+        // A fault logged earlier in the shift while paging doesn't move the pages after the cursor
+        insert("25/08/2021 06:30:00;1;Standing;12;J Smith;00:07:00;3");
+
+        FaultLogResponse second = store.getFaultLog("3", DATE, "day", PageCursor.decode(first.nextCursor()), 2);
+        assertEquals(List.of(4L, 1L), ids(second));
+
+        FaultLogResponse last = store.getFaultLog("3", DATE, "day", PageCursor.decode(second.nextCursor()), 2);
+        assertEquals(List.of(5L), ids(last));
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    void faultLogStartsAtTheShiftForACursorFromBeforeIt() {
+        insert("25/08/2021 07:00:00;1;Standing;12;J Smith;00:01:00;3",
+                "25/08/2021 18:00:00;1;Standing;12;J Smith;00:02:00;3");
+
+        PageCursor earlier = new PageCursor(LocalDateTime.of(2021, 8, 1, 0, 0), 1);
+        assertEquals(List.of(1L), ids(store.getFaultLog("3", DATE, "day", earlier, 10)));
+        assertEquals(List.of(2L), ids(store.getFaultLog("3", DATE, "night", null, 10)));
+    }
+
+    @Test
+    void trendRejectsTopFaultsBelowOne() {
+        Map<String, Object> trend = store.getTrendData(DATE, DATE, null, "day", 0);
+        assertTrue(trend.containsKey("error"));
+    }
+
+    private void insert(String... lines) {
+        List<KnittingFault> faults = new ArrayList<>();
+        for (String line : lines) {
+            faults.add(KnittingFault.parse(line));
+        }
+        store.insertKnittingFaults(faults);
+    }
+
+    private List<Object> shiftData() {
+        List<Object> data = new ArrayList<>();
+        for (String date : new String[] {"2021-08-24", DATE, "2021-08-26"}) {
+            for (String shift : new String[] {"day", "night"}) {
+                OverviewResponse overview = store.getOverviewData(date, shift);
+                data.add(List.of(date, shift, overview.machines().numbers().length));
+                for (int machine : overview.machines().numbers()) {
+                    data.add(store.getMachineCardData(String.valueOf(machine), date, shift).downTime());
+                    data.add(store.getFaultReport(String.valueOf(machine), date, shift).faultReport());
+                }
+            }
+        }
+        return data;
+    }
+
+    private static List<Long> ids(FaultLogResponse page) {
+        return page.faultLog().stream().map(FaultLogResponse.Row::id).toList();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.machinelogapi;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PageCursorTests {
+
+    @Test
+    void decodesWhatItEncoded() {
+        // LocalDateTime leaves out zero seconds and keeps fractions of a second, both have to come back the same
+        for (PageCursor cursor : new PageCursor[] {
+                new PageCursor(LocalDateTime.of(2021, 8, 25, 7, 0), 1),
+                new PageCursor(LocalDateTime.of(2021, 8, 25, 6, 31, 12), 42),
+                new PageCursor(LocalDateTime.of(2021, 8, 25, 23, 59, 59, 123456000), Integer.MAX_VALUE),
+        }) {
+            assertEquals(cursor, PageCursor.decode(cursor.encode()));
+        }
+    }
+
+    @Test
+    void encodesAsAUrlSafeToken() {
+        String token = new PageCursor(LocalDateTime.of(2021, 8, 25, 6, 31, 12), 42).encode();
+
+        assertFalse(token.contains("="), token);
+        assertFalse(token.contains("+"), token);
+        assertFalse(token.contains("/"), token);
+    }
+
+    @Test
+    void noTokenIsTheFirstPage() {
+        assertNull(PageCursor.decode(null));
+        assertNull(PageCursor.decode(""));
+    }
+
+    @Test
+    void rejectsTokensItDidNotMake() {
+        String[] tokens = {
+                "not base64!",
+                token("2021-08-25T07:00"),
+                token("2021-08-25T07:00|"),
+                token("2021-08-25T07:00|x"),
+                token("25/08/2021 07:00:00|1"),
+                token("|1"),
+                token("2021-08-25T07:00|99999999999"),
+        };
+
+        for (String token : tokens) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(token), token);
+            assertEquals("Invalid cursor", e.getMessage());
+        }
+    }
+
+    private static String token(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+}
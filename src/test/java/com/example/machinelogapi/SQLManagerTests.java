@@ -0,0 +1,95 @@
+package com.example.machinelogapi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SQLManagerTests {
+
+    private static final String DATE = "2021-08-25";
+
+    private final Connection con = mock(Connection.class);
+    private final PreparedStatement statement = mock(PreparedStatement.class);
+    private final ResultSet removed = mock(ResultSet.class);
+
+    private ShiftAggregateCache shiftCache;
+    private SQLManager store;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        ShiftCalendar calendar = new ShiftCalendar("06:00,17:30", "06:00,17:30", "SATURDAY,SUNDAY", "06:00,17:30", "", 10);
+        MachineRegistry registry = new MachineRegistry(Optional.empty(), "1:knitting:Long Eaton,3:knitting:Long Eaton");
+        FaultDictionary dictionary = new FaultDictionary(Optional.empty(), 10000, "1:Standing", "12:J Smith");
+        dictionary.load();
+        shiftCache = new ShiftAggregateCache(calendar, registry, 16);
+
+        ConnectionPool pool = mock(ConnectionPool.class);
+        when(pool.getConnection()).thenReturn(con);
+        when(con.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(removed);
+
+        // The fault being removed, 10 minutes on machine 3 in the day shift
+        when(removed.next()).thenReturn(true, false);
+        when(removed.getTimestamp(1)).thenReturn(Timestamp.valueOf(LocalDateTime.of(2021, 8, 25, 7, 0)));
+        when(removed.getInt(2)).thenReturn(3);
+        when(removed.getLong(4)).thenReturn(600L);
+
+        store = new SQLManager(pool, shiftCache, calendar, registry, dictionary,
+                new LiveShiftFeed(shiftCache, calendar, dictionary, 256, 1800000, 15000), new SimpleMeterRegistry(), 1000, false);
+
+        // Cache the shift with a fault of 30 minutes on machine 3, removals have to keep it current
+        shiftCache.getShiftTotals(DATE, "day", (machines, faultSeconds, faults) -> {
+            faultSeconds[machines.indexOf(3)] = 1800;
+            faults[machines.indexOf(3)] = 1;
+        });
+    }
+
+    @Test
+    void removingACodedFaultTakesItOffTheShift() throws SQLException {
+        when(removed.getInt(3)).thenReturn(1);
+        when(removed.wasNull()).thenReturn(false);
+
+        store.removeFault(1);
+
+        assertEquals(1200, machine3().faultSeconds()[index()]);
+        assertEquals(0, machine3().faults()[index()]);
+        verify(con).prepareStatement(contains("INSERT INTO fault_rollup"));
+    }
+
+    @Test
+    void removingAnUncodedFaultLeavesTheShiftAlone() throws SQLException {
+        // Uncoded faults are left out of the rollup, and so out of the cached totals read from it
+        when(removed.getInt(3)).thenReturn(0);
+        when(removed.wasNull()).thenReturn(true);
+
+        store.removeFault(1);
+
+        assertEquals(1800, machine3().faultSeconds()[index()]);
+        assertEquals(1, machine3().faults()[index()]);
+        verify(con, never()).prepareStatement(contains("INSERT INTO fault_rollup"));
+    }
+
+    private ShiftAggregateCache.ShiftTotals machine3() {
+        return shiftCache.peekShiftTotals(ShiftCalendar.keyOf(DATE, "day"));
+    }
+
+    private int index() {
+        return machine3().machines().indexOf(3);
+    }
+}
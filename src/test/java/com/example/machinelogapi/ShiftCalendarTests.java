@@ -0,0 +1,136 @@
+package com.example.machinelogapi;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShiftCalendarTests {
+
+    // 2021-08-25 is a Wednesday, 2021-08-28 and 29 the weekend and 2021-08-30 a bank holiday Monday
+    private final ShiftCalendar calendar = calendar(10);
+
+    @Test
+    void splitsAWeekdayAtTheShiftStarts() {
+        assertEquals(night("2021-08-24"), calendar.shiftOf(at("2021-08-25T05:59:59")));
+        assertEquals(day("2021-08-25"), calendar.shiftOf(at("2021-08-25T06:00:00")));
+        assertEquals(day("2021-08-25"), calendar.shiftOf(at("2021-08-25T17:29:59")));
+        assertEquals(night("2021-08-25"), calendar.shiftOf(at("2021-08-25T17:30:00")));
+        assertEquals(night("2021-08-25"), calendar.shiftOf(at("2021-08-25T23:59:59")));
+    }
+
+    @Test
+    void countsTheEarlyHoursTowardsThePreviousNight() {
+        assertEquals(night("2021-08-25"), calendar.shiftOf(at("2021-08-26T00:00:00")));
+        assertEquals(night("2021-08-25"), calendar.shiftOf(at("2021-08-26T05:59:59")));
+
+        // Across a month and a year as well
+        assertEquals(night("2021-08-31"), calendar.shiftOf(at("2021-09-01T03:00:00")));
+        assertEquals(night("2020-12-31"), calendar.shiftOf(at("2021-01-01T03:00:00")));
+    }
+
+    @Test
+    void usesTheWeekendPatternOnWeekendDays() {
+        // Friday's night shift runs until the weekend day shift starts at 08:00
+        assertEquals(night("2021-08-27"), calendar.shiftOf(at("2021-08-28T07:59:59")));
+        assertEquals(day("2021-08-28"), calendar.shiftOf(at("2021-08-28T08:00:00")));
+        assertEquals(night("2021-08-28"), calendar.shiftOf(at("2021-08-28T16:00:00")));
+
+        assertBounds("2021-08-27T17:30", "2021-08-28T08:00", "2021-08-27", "night");
+        assertBounds("2021-08-28T08:00", "2021-08-28T16:00", "2021-08-28", "day");
+        assertBounds("2021-08-28T16:00", "2021-08-29T08:00", "2021-08-28", "night");
+    }
+
+    @Test
+    void usesTheHolidayPatternOnHolidays() {
+        // The holiday pattern wins over the weekday one, and ends the night shift before it
+        assertBounds("2021-08-29T16:00", "2021-08-30T07:00", "2021-08-29", "night");
+        assertBounds("2021-08-30T07:00", "2021-08-30T15:00", "2021-08-30", "day");
+        assertBounds("2021-08-30T15:00", "2021-08-31T06:00", "2021-08-30", "night");
+
+        assertEquals(night("2021-08-29"), calendar.shiftOf(at("2021-08-30T06:30:00")));
+        assertEquals(night("2021-08-30"), calendar.shiftOf(at("2021-08-30T15:00:00")));
+    }
+
+    @Test
+    void givesTheFullLengthOfAShiftThatHasEnded() {
+        assertEquals(11.5, calendar.elapsedHours(LocalDate.parse("2021-08-25"), "day"));
+        assertEquals(12.5, calendar.elapsedHours(LocalDate.parse("2021-08-25"), "night"));
+        assertEquals(14.5, calendar.elapsedHours(LocalDate.parse("2021-08-27"), "night"));
+        assertEquals(8.0, calendar.elapsedHours(LocalDate.parse("2021-08-30"), "day"));
+
+        assertTrue(calendar.hasStarted(LocalDate.parse("2021-08-25"), "night"));
+        assertFalse(calendar.hasStarted(LocalDate.now().plusDays(2), "day"));
+    }
+
+    @Test
+    void treatsAnythingButDayAsTheNightShift() {
+        assertEquals(day("2021-08-25"), ShiftCalendar.keyOf("2021-08-25", "day"));
+        assertEquals(night("2021-08-25"), ShiftCalendar.keyOf("2021-08-25", "night"));
+        assertEquals(night("2021-08-25"), ShiftCalendar.keyOf("2021-08-25", "Day"));
+        assertBounds("2021-08-25T17:30", "2021-08-26T06:00", "2021-08-25", "evening");
+    }
+
+    @Test
+    void worksOutDatesOutsideThePrecomputedWindow() {
+        // Nothing is precomputed but today and tomorrow, so all of these are worked out when asked
+        ShiftCalendar small = calendar(0);
+
+        // 1999-12-31 is a Friday and 2100-01-02 a Saturday
+        assertEquals(night("1999-12-31"), small.shiftOf(at("2000-01-01T07:59:59")));
+        assertEquals(day("2000-01-01"), small.shiftOf(at("2000-01-01T08:00:00")));
+        assertArrayEquals(timestamps("1999-12-31T17:30", "2000-01-01T08:00"), small.bounds(LocalDate.parse("1999-12-31"), "night"));
+        assertEquals(night("2100-01-01"), small.shiftOf(at("2100-01-02T05:00:00")));
+        assertArrayEquals(timestamps("2100-01-02T08:00", "2100-01-02T16:00"), small.bounds(LocalDate.parse("2100-01-02"), "day"));
+
+        // Across the edges of the window it agrees with a calendar that has the dates precomputed
+        LocalDateTime start = LocalDate.now().minusDays(3).atStartOfDay();
+        for (LocalDateTime moment = start; moment.isBefore(start.plusDays(7)); moment = moment.plusMinutes(30)) {
+            assertEquals(calendar.shiftOf(moment), small.shiftOf(moment), moment.toString());
+        }
+        for (LocalDate date = start.toLocalDate(); date.isBefore(start.toLocalDate().plusDays(7)); date = date.plusDays(1)) {
+            assertArrayEquals(calendar.bounds(date, "day"), small.bounds(date, "day"), date.toString());
+            assertArrayEquals(calendar.bounds(date, "night"), small.bounds(date, "night"), date.toString());
+        }
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> new ShiftCalendar("06:00", "08:00,16:00", "SATURDAY,SUNDAY", "07:00,15:00", "", 0));
+        assertThrows(IllegalArgumentException.class, () -> new ShiftCalendar("06:00,17:30,22:00", "08:00,16:00", "SATURDAY,SUNDAY", "07:00,15:00", "", 0));
+        assertThrows(IllegalArgumentException.class, () -> new ShiftCalendar("06:00,17:30", "16:00,08:00", "SATURDAY,SUNDAY", "07:00,15:00", "", 0));
+        assertThrows(IllegalArgumentException.class, () -> new ShiftCalendar("06:00,17:30", "08:00,16:00", "SATURDAY,SUNDAY", "07:00,07:00", "", 0));
+        assertThrows(IllegalArgumentException.class, () -> new ShiftCalendar("06:00,17:30", "08:00,16:00", "SATURDAY,FUNDAY", "07:00,15:00", "", 0));
+    }
+
+    private static ShiftCalendar calendar(int precomputeYears) {
+        return new ShiftCalendar("06:00,17:30", "08:00,16:00", "saturday, sunday", "07:00,15:00", "2021-08-30", precomputeYears);
+    }
+
+    private void assertBounds(String start, String end, String date, String shift) {
+        assertArrayEquals(timestamps(start, end), calendar.bounds(LocalDate.parse(date), shift), date + " " + shift);
+    }
+
+    private static Timestamp[] timestamps(String start, String end) {
+        return new Timestamp[] {Timestamp.valueOf(LocalDateTime.parse(start)), Timestamp.valueOf(LocalDateTime.parse(end))};
+    }
+
+    private static LocalDateTime at(String dateTime) {
+        return LocalDateTime.parse(dateTime);
+    }
+
+    private static ShiftCalendar.ShiftKey day(String date) {
+        return new ShiftCalendar.ShiftKey(LocalDate.parse(date), "day");
+    }
+
+    private static ShiftCalendar.ShiftKey night(String date) {
+        return new ShiftCalendar.ShiftKey(LocalDate.parse(date), "night");
+    }
+}